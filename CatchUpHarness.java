@@ -0,0 +1,91 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Checks MisfirePolicy.CATCH_UP through TaskScheduler and ConcurrentDispatcher: a task that missed
+// several slots while the scheduler was down runs once per missed slot (up to its cap), one run at a
+// time, under every overlap policy. Each task runs "sleep 0.2", so it needs a Unix-like system.
+// Writes scheduled_tasks.log and scheduled_tasks.state to the working directory.
+public class CatchUpHarness {
+    private static final int MAX_CATCH_UP_RUNS = 3;
+
+    private static int failures;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (OverlapPolicy policy : OverlapPolicy.values()) {
+            check(policy);
+        }
+        System.out.println(failures == 0 ? "all passed" : failures + " failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void check(OverlapPolicy policy) throws InterruptedException {
+        // Last ran ten minutes ago on a two-minute schedule, so five slots were missed
+        String name = "CatchUp" + policy + System.nanoTime();
+        TaskStateStore.forPath("scheduled_tasks.state").record(name, LocalDateTime.now().minusMinutes(10));
+        RecordingTask task = new RecordingTask(name);
+        task.setOverlapPolicy(policy);
+        task.setMaxConcurrency(MAX_CATCH_UP_RUNS);
+        task.setMisfirePolicy(MisfirePolicy.CATCH_UP);
+        task.setMaxCatchUpRuns(MAX_CATCH_UP_RUNS);
+
+        ConcurrentDispatcher dispatcher = new ConcurrentDispatcher();
+        TaskScheduler scheduler = new TaskScheduler(dispatcher);
+        scheduler.setCatchUpSpread(Duration.ofMillis(100));
+        scheduler.schedule(task);
+        Thread loop = new Thread(() -> {
+            try {
+                scheduler.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "scheduler");
+        loop.start();
+        // Three runs of 0.2 s plus up to 0.1 s of spread each; the next regular slot is minutes away
+        Thread.sleep(3_000);
+        scheduler.stop();
+        loop.join();
+        dispatcher.shutdown();
+
+        List<long[]> runs = task.runs();
+        report(policy + ": " + MAX_CATCH_UP_RUNS + " catch-up runs (got " + runs.size() + ")", runs.size() == MAX_CATCH_UP_RUNS);
+        boolean sequential = true;
+        for (int i = 1; i < runs.size(); i++) {
+            sequential &= runs.get(i)[0] >= runs.get(i - 1)[1];
+        }
+        report(policy + ": each run starts after the previous one ended", sequential);
+    }
+
+    private static void report(String name, boolean ok) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+
+    // Records the start and end of every run
+    private static final class RecordingTask extends ScheduledTask {
+        private final List<long[]> runs = new ArrayList<>();
+
+        RecordingTask(String name) {
+            super(name, new String[]{"sleep", "0.2"}, "minute", 2, "catch_up_output.txt");
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            super.run();
+            long end = System.nanoTime();
+            synchronized (runs) {
+                runs.add(new long[]{start, end});
+            }
+        }
+
+        List<long[]> runs() {
+            synchronized (runs) {
+                return new ArrayList<>(runs);
+            }
+        }
+    }
+}
@@ -1,126 +1,428 @@
 import javax.sound.sampled.*;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
 
 public class ClapSnapDetector {
+    // 分析窗口长度（约 12 ms）和默认帧移（约 1.5 ms）；拍手声是很短的瞬态，短窗口比长窗口更早、更稳定地检测到它
+    static final int FRAME_SIZE = 512;
+    static final int DEFAULT_HOP_SIZE = 64;
+    static final float CAPTURE_SAMPLE_RATE = 44100;
+    private static final short CLAP_EFFECT = 0;
+    private static final short SNAP_EFFECT = 1;
+    // 音效统一转换成这个格式，输出线路池按它预先打开；几路线路即最多几个音效可以重叠播放
+    private static final AudioFormat PLAYBACK_FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int PLAYBACK_VOICES = 4;
+    // 离线模式每次从映射区读出的样本数
+    private static final int OFFLINE_CHUNK_SIZE = 8192;
+
     private float threshold;
     private int minFrequency;
     private int maxFrequency;
-    private boolean isListening;
-    private int detectedCount;
+    private int hopSize;
+    private volatile boolean isListening;
+    private final AtomicInteger detectedCount = new AtomicInteger();
     private String clapAudioPath;
     private String snapAudioPath;
+    private Mixer playbackMixer;
+    private DetectorStrategy strategy = DetectorStrategy.SPECTRAL;
+
+    // 每个输入设备的每个声道是一个采集源，各有自己的环形缓冲、检测器和计数
+    private volatile List<CaptureSource> sources = Collections.emptyList();
+    // 检测结果经各采集源自己的单生产者环形缓冲交给播放线程，播放线程没有待播放的音效时在这里等待
+    private final ConsumerParker playbackParker = new ConsumerParker(this::hasPendingPlayback);
+    private final AtomicLong droppedTriggers = new AtomicLong();
 
     public ClapSnapDetector(float threshold, int minFrequency, int maxFrequency) {
+        this(threshold, minFrequency, maxFrequency, DEFAULT_HOP_SIZE);
+    }
+
+    // hopSize 越小检测延迟越低，但每秒的 FFT 次数越多
+    public ClapSnapDetector(float threshold, int minFrequency, int maxFrequency, int hopSize) {
         this.threshold = threshold;
         this.minFrequency = minFrequency;
         this.maxFrequency = maxFrequency;
+        this.hopSize = hopSize;
         this.isListening = false;
-        this.detectedCount = 0;
         this.clapAudioPath = "clap.wav";
         this.snapAudioPath = "snap.wav";
     }
 
-    private boolean detectClapSnap(byte[] audioData, float sampleRate) {
-        // 将字节数组转换为short数组
-        short[] audioShorts = new short[audioData.length / 2];
-        for (int i = 0; i < audioShorts.length; i++) {
-            audioShorts[i] = (short) ((audioData[i * 2 + 1] << 8) | (audioData[i * 2] & 0xff));
-        }
-
-        // 执行FFT
-        Complex[] fft = FFT.fft(Arrays.stream(audioShorts).mapToDouble(s -> s / 32768.0).toArray());
+    // 在分析线程中调用，只把要播放的音效交给播放线程，不在这里等待播放
+    private void onDetected(CaptureSource source) {
+        source.countDetection();
+        int total = detectedCount.incrementAndGet();
+        String prefix = sources.size() > 1 ? "[" + source.getName() + "] " : "";
+        System.out.println(prefix + "检测到拍手声或啪啪声！ (总计: " + total + ")");
 
-        // 计算频率和幅度
-        double[] magnitudes = new double[fft.length / 2];
-        for (int i = 0; i < magnitudes.length; i++) {
-            magnitudes[i] = fft[i].abs();
+        short effect = total % 2 == 0 ? CLAP_EFFECT : SNAP_EFFECT;
+        if (source.offerTrigger(effect)) {
+            playbackParker.wake();
+        } else {
+            droppedTriggers.incrementAndGet();
         }
+    }
 
-        double maxMagnitude = Arrays.stream(magnitudes).max().orElse(0);
-        int peakCount = 0;
-
-        for (int i = 0; i < magnitudes.length; i++) {
-            double frequency = i * sampleRate / audioShorts.length;
-            if (frequency >= minFrequency && frequency <= maxFrequency && magnitudes[i] > threshold * maxMagnitude) {
-                peakCount++;
+    // 播放线程：依次取出各采集源的音效，交给预加载的播放器后立即返回，不等待播放完成；
+    // 没有播放器时只取出，不让队列积压。全部为空时 park，直到有新的检测结果或停止监听
+    private void playback(SoundEffectPlayer player, int clapEffect, int snapEffect) {
+        short[] effects = new short[CaptureSource.TRIGGER_CAPACITY];
+        while (isListening) {
+            boolean played = false;
+            List<CaptureSource> current = sources;
+            for (int i = 0; i < current.size(); i++) {
+                int count = current.get(i).readTriggers(effects);
+                played |= count > 0;
+                for (int j = 0; j < count && player != null; j++) {
+                    if (effects[j] == CLAP_EFFECT) {
+                        System.out.println("播放拍手声音效");
+                        player.play(clapEffect);
+                    } else {
+                        System.out.println("播放打响指声音效");
+                        player.play(snapEffect);
+                    }
+                }
+            }
+            if (!played) {
+                playbackParker.park();
             }
         }
+    }
 
-        return peakCount > 0;
+    private boolean hasPendingPlayback() {
+        return !isListening || getPlaybackQueueDepth() > 0;
     }
 
-    private void playAudio(String filePath) {
-        File audioFile = new File(filePath);
-        if (audioFile.exists()) {
+    public void listen() {
+        listen(Collections.emptyList(), 1);
+    }
+
+    // 同时从多个输入设备采集，每个设备按 channels 个声道打开，每个声道作为独立的采集源检测；
+    // devices 为空时使用系统默认输入设备。每个设备一个采集线程，分析由不超过 CPU 核数的共享分析线程进行
+    public void listen(List<Mixer.Info> devices, int channels) {
+        AudioFormat format = new AudioFormat(CAPTURE_SAMPLE_RATE, 16, channels, true, true);
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+        List<Mixer.Info> targets = devices.isEmpty() ? Collections.singletonList(null) : devices;
+        List<TargetDataLine> lines = new ArrayList<>();
+        List<AnalysisWorker> workers = new ArrayList<>();
+
+        // 播放器打不开时 player 为 null，照常检测，只是不播放音效
+        try (SoundEffectPlayer player = openPlayer()) {
+            // 音效在开始监听前一次性解码，检测到时不再读文件
+            int clapEffect = player == null ? -1 : player.load(clapAudioPath);
+            int snapEffect = player == null ? -1 : player.load(snapAudioPath);
+
+            List<CaptureSource> allSources = new ArrayList<>();
+            List<List<CaptureSource>> deviceSources = new ArrayList<>();
+            for (Mixer.Info device : targets) {
+                TargetDataLine line = (TargetDataLine) (device == null ? AudioSystem.getLine(info) : AudioSystem.getMixer(device).getLine(info));
+                lines.add(line);
+                line.open(format);
+                List<CaptureSource> channelSources = new ArrayList<>();
+                for (int channel = 0; channel < channels; channel++) {
+                    String name = (device == null ? "default" : device.getName()) + (channels > 1 ? "#" + channel : "");
+                    CaptureSource source = new CaptureSource(name, hopSize);
+                    source.setDetector(createDetector(format.getSampleRate(), position -> onDetected(source)));
+                    channelSources.add(source);
+                }
+                allSources.addAll(channelSources);
+                deviceSources.add(channelSources);
+            }
+            sources = Collections.unmodifiableList(allSources);
+
+            // 采集源按轮转分给各分析线程，每个源只由一个线程读取
+            int workerCount = Math.min(allSources.size(), Runtime.getRuntime().availableProcessors());
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(new AnalysisWorker("clap-analysis-" + i));
+            }
+            for (int i = 0; i < allSources.size(); i++) {
+                workers.get(i % workerCount).add(allSources.get(i));
+            }
+
+            isListening = true;
+            for (AnalysisWorker worker : workers) {
+                worker.start();
+            }
+            List<Thread> captureThreads = new ArrayList<>();
+            for (int i = 0; i < lines.size(); i++) {
+                TargetDataLine line = lines.get(i);
+                List<CaptureSource> channelSources = deviceSources.get(i);
+                captureThreads.add(new Thread(() -> capture(line, channelSources), "clap-capture-" + i));
+            }
+            Thread playbackThread = new Thread(() -> playback(player, clapEffect, snapEffect), "clap-playback");
+            playbackThread.start();
+            for (int i = 0; i < lines.size(); i++) {
+                lines.get(i).start();
+                captureThreads.get(i).start();
+            }
+            System.out.println("开始监听拍手声或啪啪声... (" + allSources.size() + " 个采集源)");
+
+            for (Thread captureThread : captureThreads) {
+                captureThread.join();
+            }
+            playbackThread.join();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            isListening = false;
+            playbackParker.wake();
+            for (TargetDataLine line : lines) {
+                line.close();
+            }
             try {
-                AudioInputStream audioStream = AudioSystem.getAudioInputStream(audioFile);
-                Clip clip = AudioSystem.getClip();
-                clip.open(audioStream);
-                clip.start();
-                // 等待音频播放完成
-                Thread.sleep(clip.getMicrosecondLength() / 1000);
-                clip.close();
-            } catch (UnsupportedAudioFileException | IOException | LineUnavailableException | InterruptedException e) {
-                e.printStackTrace();
+                for (AnalysisWorker worker : workers) {
+                    worker.stop(TimeUnit.SECONDS.toMillis(1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        } else {
-            System.out.println("音频文件 " + filePath + " 不存在");
         }
     }
 
-    public void listen() {
-        AudioFormat format = new AudioFormat(44100, 16, 1, true, true);
-        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+    // 没有可用的输出设备时返回 null：播放失败不应让整个监听失败
+    private SoundEffectPlayer openPlayer() {
+        try {
+            return new SoundEffectPlayer(playbackMixer, PLAYBACK_FORMAT, PLAYBACK_VOICES);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.out.println("无法打开播放设备，只检测不播放: " + e.getMessage());
+            return null;
+        }
+    }
 
-        try (TargetDataLine line = (TargetDataLine) AudioSystem.getLine(info)) {
-            line.open(format);
-            line.start();
+    // 采集线程：每次只读取一个帧移的数据，通过按格式字节序创建的 ShortBuffer 视图直接按声道取样本，
+    // 交给各声道的采集源后立即继续读取
+    private void capture(TargetDataLine line, List<CaptureSource> channelSources) {
+        AudioFormat format = line.getFormat();
+        int channels = format.getChannels();
+        byte[] buffer = new byte[hopSize * format.getFrameSize()];
+        ShortBuffer samples = ByteBuffer.wrap(buffer)
+                .order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN)
+                .asShortBuffer();
 
-            byte[] buffer = new byte[4096];
-            System.out.println("开始监听拍手声或啪啪声...");
-            isListening = true;
+        while (isListening) {
+            int frames = line.read(buffer, 0, buffer.length) / format.getFrameSize();
+            for (int channel = 0; channel < channels; channel++) {
+                channelSources.get(channel).offer(samples, channel, channels, frames);
+            }
+        }
+    }
 
-            while (isListening) {
-                int bytesRead = line.read(buffer, 0, buffer.length);
-                if (detectClapSnap(buffer, format.getSampleRate())) {
-                    detectedCount++;
-                    System.out.println("检测到拍手声或啪啪声！ (总计: " + detectedCount + ")");
+    // 离线检测单个 WAV 文件，与实时监听使用同一个检测核心；返回事件时间（秒）和处理耗时
+    public OfflineResult detectFile(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (MappedWavReader reader = new MappedWavReader(file)) {
+            float sampleRate = reader.getSampleRate();
+            List<Double> events = new ArrayList<>();
+            OnsetDetector detector = createDetector(sampleRate, position -> events.add(position / (double) sampleRate));
+            double[] samples = new double[OFFLINE_CHUNK_SIZE];
+            int count;
+            while ((count = reader.read(samples)) > 0) {
+                detector.process(samples, 0, count);
+            }
+            return new OfflineResult(file, events, reader.getFrameCount() / (double) sampleRate, System.nanoTime() - start);
+        }
+    }
 
-                    if (detectedCount % 2 == 0) {
-                        System.out.println("播放拍手声音效");
-                        playAudio(clapAudioPath);
-                    } else {
-                        System.out.println("播放打响指声音效");
-                        playAudio(snapAudioPath);
-                    }
+    // 批量离线检测：目录递归展开为其中的 .wav 文件，文件之间按 CPU 核数并行处理，结果按输入顺序打印
+    public void detectFiles(List<Path> inputs) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> walk = Files.walk(input)) {
+                    walk.filter(path -> Files.isRegularFile(path)
+                                    && path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav"))
+                            .sorted()
+                            .forEach(files::add);
                 }
+            } else {
+                files.add(input);
             }
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
         }
+
+        long start = System.nanoTime();
+        int parallelism = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        double totalAudioSeconds = 0;
+        try {
+            List<Future<OfflineResult>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                results.add(pool.submit(() -> detectFile(file)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    OfflineResult result = results.get(i).get();
+                    totalAudioSeconds += result.getAudioSeconds();
+                    System.out.println(result);
+                } catch (ExecutionException e) {
+                    System.out.println("无法处理 " + files.get(i) + ": " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("共 %d 个文件，音频 %.1f 秒，耗时 %.2f 秒，实时倍率 %.1fx%n",
+                files.size(), totalAudioSeconds, elapsedSeconds, totalAudioSeconds / elapsedSeconds);
     }
 
     public void startListening() {
-        Thread listeningThread = new Thread(this::listen);
+        startListening(Collections.emptyList(), 1);
+    }
+
+    public void startListening(List<Mixer.Info> devices, int channels) {
+        Thread listeningThread = new Thread(() -> listen(devices, channels));
         listeningThread.start();
     }
 
+    // 按名称（包含即可）查找支持录音的输入设备
+    public static Mixer.Info findInputDevice(String name) throws LineUnavailableException {
+        Line.Info captureLine = new Line.Info(TargetDataLine.class);
+        for (Mixer.Info device : AudioSystem.getMixerInfo()) {
+            if (device.getName().contains(name) && AudioSystem.getMixer(device).isLineSupported(captureLine)) {
+                return device;
+            }
+        }
+        throw new LineUnavailableException("no input device matching: " + name);
+    }
+
     public void stopListening() {
         isListening = false;
+        playbackParker.wake();
+    }
+
+    // 默认使用完整 FFT；常开的低功耗设备可以换成只在能量突变时计算频段的 GOERTZEL
+    public void setDetectorStrategy(DetectorStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    private OnsetDetector createDetector(float sampleRate, DetectionListener listener) {
+        return strategy.create(sampleRate, FRAME_SIZE, hopSize, threshold, minFrequency, maxFrequency, listener);
+    }
+
+    // 为空时使用系统默认输出设备；测试时可以传入记录写入数据的 Mixer
+    public void setPlaybackMixer(Mixer playbackMixer) {
+        this.playbackMixer = playbackMixer;
+    }
+
+    public int getDetectedCount() {
+        return detectedCount.get();
+    }
+
+    // 当前监听中的各个采集源，可以分别查看检测次数、丢帧和队列深度
+    public List<CaptureSource> getSources() {
+        return sources;
+    }
+
+    // 所有采集源因分析跟不上而丢弃的采样帧数之和
+    public long getDroppedFrames() {
+        long total = 0;
+        for (CaptureSource source : sources) {
+            total += source.getDroppedFrames();
+        }
+        return total;
+    }
+
+    // 因播放队列已满而丢弃的音效触发次数
+    public long getDroppedTriggers() {
+        return droppedTriggers.get();
+    }
+
+    public int getCaptureQueueDepth() {
+        int total = 0;
+        for (CaptureSource source : sources) {
+            total += source.getQueueDepth();
+        }
+        return total;
     }
 
+    public int getPlaybackQueueDepth() {
+        int total = 0;
+        for (CaptureSource source : sources) {
+            total += source.getTriggerDepth();
+        }
+        return total;
+    }
+
+    // 不带文件参数时监听麦克风，可用 --device=名称 指定一个或多个输入设备，--channels=2 按声道分别检测；
+    // 带参数时离线检测给出的 WAV 文件或目录。--threshold=0.3 调整阈值，--strategy=goertzel 选择检测算法
     public static void main(String[] args) {
-        ClapSnapDetector detector = new ClapSnapDetector(0.3f, 2000, 4000);
+        float threshold = 0.3f;
+        DetectorStrategy strategy = DetectorStrategy.SPECTRAL;
+        int channels = 1;
+        List<Path> inputs = new ArrayList<>();
+        List<Mixer.Info> devices = new ArrayList<>();
         try {
-            detector.startListening();
+            for (String arg : args) {
+                if (arg.startsWith("--threshold=")) {
+                    threshold = Float.parseFloat(arg.substring("--threshold=".length()));
+                } else if (arg.startsWith("--strategy=")) {
+                    strategy = DetectorStrategy.valueOf(arg.substring("--strategy=".length()).toUpperCase(Locale.ROOT));
+                } else if (arg.startsWith("--device=")) {
+                    devices.add(findInputDevice(arg.substring("--device=".length())));
+                } else if (arg.startsWith("--channels=")) {
+                    channels = Integer.parseInt(arg.substring("--channels=".length()));
+                } else {
+                    inputs.add(Paths.get(arg));
+                }
+            }
+        } catch (LineUnavailableException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        ClapSnapDetector detector = new ClapSnapDetector(threshold, 2000, 4000);
+        detector.setDetectorStrategy(strategy);
+        if (!inputs.isEmpty()) {
+            try {
+                detector.detectFiles(inputs);
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        try {
+            detector.startListening(devices, channels);
             Thread.sleep(60000); // 运行60秒
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
             detector.stopListening();
-            System.out.println("总共检测到 " + detector.detectedCount + " 次拍手声或啪啪声");
+            System.out.println("总共检测到 " + detector.getDetectedCount() + " 次拍手声或啪啪声");
+            for (CaptureSource source : detector.getSources()) {
+                System.out.println(source);
+            }
+            System.out.println("丢弃音效: " + detector.getDroppedTriggers());
         }
     }
 }
@@ -161,3 +463,889 @@ class FFT {
     }
 }
 
+// 原地迭代基2 FFT：旋转因子和位反转表只计算一次，变换过程中不创建任何对象
+class FastFFT {
+    private final int n;
+    private final int[] reversed;
+    private final double[] cos;
+    private final double[] sin;
+
+    public FastFFT(int n) {
+        if (n < 1 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("n is not a power of 2: " + n);
+        }
+        this.n = n;
+
+        int bits = Integer.numberOfTrailingZeros(n);
+        reversed = new int[n];
+        for (int i = 0; i < n; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cos = new double[n / 2];
+        sin = new double[n / 2];
+        for (int k = 0; k < n / 2; k++) {
+            double kth = -2 * k * Math.PI / n;
+            cos[k] = Math.cos(kth);
+            sin[k] = Math.sin(kth);
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    // 变换结果写回 re/im，旋转因子的符号约定与 FFT.fft 相同
+    public void transform(double[] re, double[] im) {
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >>> 1;
+            int step = n / size;
+            for (int start = 0; start < n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    double tr = wr * re[b] - wi * im[b];
+                    double ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
+
+// 检测结果回调，position 为检测时刻对应的样本序号（从 0 开始累计）
+interface DetectionListener {
+    void onDetection(long position);
+}
+
+// 起音检测器的公共接口，实时监听、离线检测和评估程序都只依赖它
+interface OnsetDetector {
+    // 输入归一化到 [-1, 1) 的样本，可以是任意长度的块
+    void process(double[] samples, int offset, int length);
+
+    long getPosition();
+}
+
+// 可选的检测算法
+enum DetectorStrategy {
+    // 每个帧移做一次完整 FFT，与全局最大幅度比较
+    SPECTRAL {
+        @Override
+        OnsetDetector create(float sampleRate, int frameSize, int hopSize, float threshold, int minFrequency, int maxFrequency,
+                             DetectionListener listener) {
+            return new SpectralOnsetDetector(sampleRate, frameSize, hopSize, threshold, minFrequency, maxFrequency, listener);
+        }
+    },
+    // 先用能量包络门控，只在能量突变时用 Goertzel 计算频段内的频点
+    GOERTZEL {
+        @Override
+        OnsetDetector create(float sampleRate, int frameSize, int hopSize, float threshold, int minFrequency, int maxFrequency,
+                             DetectionListener listener) {
+            return new GoertzelOnsetDetector(sampleRate, frameSize, hopSize, threshold, minFrequency, maxFrequency, listener);
+        }
+    };
+
+    abstract OnsetDetector create(float sampleRate, int frameSize, int hopSize, float threshold, int minFrequency, int maxFrequency,
+                                  DetectionListener listener);
+}
+
+// 频段受限的快速检测：每个样本只做一次乘加来累计帧移能量，帧移能量超过其滑动平均的 ENERGY_RATIO 倍时才打开门控，
+// 再用 Goertzel 算法只计算 minFrequency 到 maxFrequency 之间的频点。完整频谱的全局最大值拿不到，
+// 改为由 Parseval 定理从加窗后的时域能量得到全频段每个频点的平均功率，要求频段平均功率不低于它的 threshold² 倍。
+// 安静或平稳的声音几乎不会打开门控，所以大部分时间的开销只有能量累计
+class GoertzelOnsetDetector implements OnsetDetector {
+    private static final double ENERGY_RATIO = 4.0;
+    private static final double ENERGY_SMOOTHING = 0.05;
+    // 约 -40 dBFS 的均方值，低于它的帧移视为底噪
+    private static final double MIN_ENERGY = 1e-4;
+    private static final double REFRACTORY_SECONDS = 0.1;
+
+    private final int frameSize;
+    private final int hopSize;
+    private final int mask;
+    private final double thresholdPower;
+    private final int minBin;
+    private final int maxBin;
+    private final long refractorySamples;
+    private final DetectionListener listener;
+
+    private final double[] window;
+    private final double[] coefficients;
+    private final double[] ring;
+    private final double[] frame;
+
+    private int ringPosition;
+    private int sinceHop;
+    private long position;
+    private long lastOnset = Long.MIN_VALUE / 2;
+    private double hopEnergy;
+    private double energyAverage;
+
+    public GoertzelOnsetDetector(float sampleRate, int frameSize, int hopSize, float threshold, int minFrequency, int maxFrequency,
+                                 DetectionListener listener) {
+        if (hopSize < 1 || hopSize > frameSize) {
+            throw new IllegalArgumentException("hopSize must be between 1 and " + frameSize + ": " + hopSize);
+        }
+        if (Integer.bitCount(frameSize) != 1) {
+            throw new IllegalArgumentException("frameSize is not a power of 2: " + frameSize);
+        }
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.mask = frameSize - 1;
+        this.thresholdPower = (double) threshold * threshold;
+        this.minBin = Math.max(0, (int) Math.ceil(minFrequency * (double) frameSize / sampleRate));
+        this.maxBin = Math.min(frameSize / 2 - 1, (int) Math.floor(maxFrequency * (double) frameSize / sampleRate));
+        this.refractorySamples = (long) (REFRACTORY_SECONDS * sampleRate);
+        this.listener = listener;
+
+        window = new double[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / frameSize);
+        }
+        coefficients = new double[Math.max(0, maxBin - minBin + 1)];
+        for (int k = minBin; k <= maxBin; k++) {
+            coefficients[k - minBin] = 2 * Math.cos(2 * Math.PI * k / frameSize);
+        }
+        ring = new double[frameSize];
+        frame = new double[frameSize];
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            double sample = samples[i];
+            ring[ringPosition] = sample;
+            ringPosition = (ringPosition + 1) & mask;
+            hopEnergy += sample * sample;
+            position++;
+            if (++sinceHop == hopSize) {
+                sinceHop = 0;
+                analyse(hopEnergy / hopSize);
+                hopEnergy = 0;
+            }
+        }
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    private void analyse(double energy) {
+        boolean gateOpen = energy > MIN_ENERGY && energy > ENERGY_RATIO * energyAverage
+                && position - lastOnset >= refractorySamples;
+        energyAverage += ENERGY_SMOOTHING * (energy - energyAverage);
+        if (gateOpen && bandIsLoud()) {
+            lastOnset = position;
+            listener.onDetection(position);
+        }
+    }
+
+    private boolean bandIsLoud() {
+        if (coefficients.length == 0) {
+            return false;
+        }
+        double windowedEnergy = 0;
+        for (int i = 0; i < frameSize; i++) {
+            double value = ring[(ringPosition + i) & mask] * window[i];
+            frame[i] = value;
+            windowedEnergy += value * value;
+        }
+
+        double bandPower = 0;
+        for (double coefficient : coefficients) {
+            double s1 = 0;
+            double s2 = 0;
+            for (int i = 0; i < frameSize; i++) {
+                double s0 = frame[i] + coefficient * s1 - s2;
+                s2 = s1;
+                s1 = s0;
+            }
+            bandPower += s1 * s1 + s2 * s2 - coefficient * s1 * s2;
+        }
+        // 单边频谱共 frameSize / 2 个频点，总功率为 frameSize * windowedEnergy / 2，平均每个频点为 windowedEnergy
+        return bandPower / coefficients.length >= thresholdPower * windowedEnergy;
+    }
+}
+
+// 短时傅里叶变换起音检测：环形缓冲保存最近 frameSize 个样本，每前进 hopSize 个样本加 Hann 窗做一次 FFT。
+// 保留原来的判定（频段内有频点幅度超过 threshold 倍的全局最大幅度），并要求频段内的频谱通量突然升高，
+// 这样跨越块边界的拍手声也只会被检测一次，延迟约为一个帧移
+class SpectralOnsetDetector implements OnsetDetector {
+    // 频谱通量需超过其滑动平均的倍数
+    private static final double FLUX_RATIO = 3.0;
+    private static final double FLUX_SMOOTHING = 0.05;
+    // 约 -40 dBFS 的频段平均幅度，低于它的通量视为底噪
+    private static final double MIN_BAND_LEVEL = 0.01;
+    // 两次检测之间的最短间隔，避免同一次拍手被重复计数
+    private static final double REFRACTORY_SECONDS = 0.1;
+
+    private final int frameSize;
+    private final int hopSize;
+    private final int mask;
+    private final float threshold;
+    private final int minBin;
+    private final int maxBin;
+    private final double minFlux;
+    private final long refractorySamples;
+    private final DetectionListener listener;
+
+    private final FastFFT fft;
+    private final double[] window;
+    private final double[] ring;
+    private final double[] re;
+    private final double[] im;
+    private final double[] previousMagnitudes;
+
+    private int ringPosition;
+    private int sinceHop;
+    private long position;
+    private long lastOnset = Long.MIN_VALUE / 2;
+    private double fluxAverage;
+
+    public SpectralOnsetDetector(float sampleRate, int frameSize, int hopSize, float threshold, int minFrequency, int maxFrequency,
+                                 DetectionListener listener) {
+        if (hopSize < 1 || hopSize > frameSize) {
+            throw new IllegalArgumentException("hopSize must be between 1 and " + frameSize + ": " + hopSize);
+        }
+        this.fft = new FastFFT(frameSize);
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.mask = frameSize - 1;
+        this.threshold = threshold;
+        this.minBin = Math.max(0, (int) Math.ceil(minFrequency * (double) frameSize / sampleRate));
+        this.maxBin = Math.min(frameSize / 2 - 1, (int) Math.floor(maxFrequency * (double) frameSize / sampleRate));
+        this.refractorySamples = (long) (REFRACTORY_SECONDS * sampleRate);
+        this.listener = listener;
+
+        window = new double[frameSize];
+        double windowGain = 0;
+        for (int i = 0; i < frameSize; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / frameSize);
+            windowGain += window[i] * window[i];
+        }
+        int bandBins = Math.max(0, maxBin - minBin + 1);
+        this.minFlux = MIN_BAND_LEVEL * Math.sqrt(windowGain) * bandBins;
+
+        ring = new double[frameSize];
+        re = new double[frameSize];
+        im = new double[frameSize];
+        previousMagnitudes = new double[bandBins];
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            ring[ringPosition] = samples[i];
+            ringPosition = (ringPosition + 1) & mask;
+            position++;
+            if (++sinceHop == hopSize) {
+                sinceHop = 0;
+                analyse();
+            }
+        }
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    private void analyse() {
+        // 从最旧的样本开始展开环形缓冲并加窗
+        for (int i = 0; i < frameSize; i++) {
+            re[i] = ring[(ringPosition + i) & mask] * window[i];
+            im[i] = 0;
+        }
+        fft.transform(re, im);
+
+        double maxPower = 0;
+        for (int i = 0; i < frameSize / 2; i++) {
+            double power = re[i] * re[i] + im[i] * im[i];
+            if (power > maxPower) {
+                maxPower = power;
+            }
+        }
+        double limit = threshold * Math.sqrt(maxPower);
+        double limitPower = limit < 0 ? -1 : limit * limit;
+
+        boolean peakInBand = false;
+        double flux = 0;
+        for (int i = minBin; i <= maxBin; i++) {
+            double power = re[i] * re[i] + im[i] * im[i];
+            if (power > limitPower) {
+                peakInBand = true;
+            }
+            double magnitude = Math.sqrt(power);
+            double rise = magnitude - previousMagnitudes[i - minBin];
+            if (rise > 0) {
+                flux += rise;
+            }
+            previousMagnitudes[i - minBin] = magnitude;
+        }
+
+        boolean onset = peakInBand && flux > minFlux && flux > FLUX_RATIO * fluxAverage
+                && position - lastOnset >= refractorySamples;
+        fluxAverage += FLUX_SMOOTHING * (flux - fluxAverage);
+        if (onset) {
+            lastOnset = position;
+            listener.onDetection(position);
+        }
+    }
+}
+
+// 一个采集源（某个设备的某个声道）：采集线程写入环形缓冲，再唤醒负责它的分析线程。
+// 每个源只归一个分析线程，单消费者的约束因此成立，而不需要为每个源单独开一个线程
+class CaptureSource {
+    // 约 1.5 秒的样本，分析短暂落后时不会丢帧
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    // 等待播放的音效个数上限，播放跟不上时丢弃并计数
+    static final int TRIGGER_CAPACITY = 16;
+
+    private final String name;
+    private final SampleRingBuffer queue = new SampleRingBuffer(QUEUE_CAPACITY);
+    // 检测到的音效交给播放线程：生产者只有负责这个源的分析线程，消费者只有播放线程
+    private final SampleRingBuffer triggers = new SampleRingBuffer(TRIGGER_CAPACITY);
+    private final AtomicLong detectedCount = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final short[] frames;
+    private final double[] samples;
+    private OnsetDetector detector;
+    private AnalysisWorker worker;
+
+    public CaptureSource(String name, int chunkSize) {
+        this.name = name;
+        this.frames = new short[chunkSize];
+        this.samples = new double[chunkSize];
+    }
+
+    // 须在开始采集前设置；回调会在分析线程中执行
+    public void setDetector(OnsetDetector detector) {
+        this.detector = detector;
+    }
+
+    // 由 AnalysisWorker.add 调用，须在开始采集前
+    void setWorker(AnalysisWorker worker) {
+        this.worker = worker;
+    }
+
+    // 只能由采集线程调用：取出 source 中从 start 开始、间隔 stride 的 count 个样本，分析跟不上时丢弃并计数
+    public void offer(ShortBuffer source, int start, int stride, int count) {
+        int written = queue.write(source, start, stride, count);
+        if (written < count) {
+            droppedFrames.addAndGet(count - written);
+        }
+        if (written > 0) {
+            worker.wake();
+        }
+    }
+
+    // 只能由负责这个源的分析线程调用，读完缓冲里已有的样本，返回是否读到了数据
+    boolean drain() {
+        boolean drained = false;
+        int count;
+        while ((count = queue.read(frames, 0, frames.length)) > 0) {
+            for (int i = 0; i < count; i++) {
+                samples[i] = frames[i] / 32768.0;
+            }
+            detector.process(samples, 0, count);
+            drained = true;
+        }
+        return drained;
+    }
+
+    void countDetection() {
+        detectedCount.incrementAndGet();
+    }
+
+    // 只能由负责这个源的分析线程调用（即在检测回调中），队列已满时返回 false
+    boolean offerTrigger(short effect) {
+        return triggers.offer(effect);
+    }
+
+    // 只能由播放线程调用，返回读出的音效个数
+    int readTriggers(short[] target) {
+        return triggers.read(target, 0, target.length);
+    }
+
+    int getTriggerDepth() {
+        return triggers.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getDetectedCount() {
+        return detectedCount.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": 检测 " + getDetectedCount() + " 次，丢弃采样帧 " + getDroppedFrames() + "，队列深度 " + getQueueDepth();
+    }
+}
+
+// 共享的分析线程：依次排空分给它的采集源，全部为空时 park，由采集线程写入后唤醒。
+// 稳态下既不提交任务也不分配对象；停止时由 listen 显式结束，不会有任务提交到已关闭的线程池
+class AnalysisWorker {
+    private final List<CaptureSource> sources = new ArrayList<>();
+    private final ConsumerParker parker = new ConsumerParker(this::hasWork);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    AnalysisWorker(String name) {
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+    }
+
+    // 须在 start 之前调用
+    void add(CaptureSource source) {
+        sources.add(source);
+        source.setWorker(this);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void wake() {
+        parker.wake();
+    }
+
+    // 已经在处理的数据处理完后退出，最多等待 timeoutMillis
+    void stop(long timeoutMillis) throws InterruptedException {
+        running = false;
+        parker.wake();
+        thread.join(timeoutMillis);
+    }
+
+    private boolean hasWork() {
+        if (!running) {
+            return true;
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).getQueueDepth() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void run() {
+        while (running) {
+            boolean drained = false;
+            for (int i = 0; i < sources.size(); i++) {
+                drained |= sources.get(i).drain();
+            }
+            if (!drained) {
+                parker.park();
+            }
+        }
+    }
+}
+
+// 单个消费线程的等待与唤醒：消费者没有数据时 park，生产者写入后只在消费者确实 park 着时才 unpark，
+// 消费者忙碌时唤醒只是一次读取，不产生系统调用；等待时不按定时器轮询
+final class ConsumerParker {
+    private final BooleanSupplier ready;
+    private volatile Thread consumer;
+    private volatile boolean parked;
+
+    ConsumerParker(BooleanSupplier ready) {
+        this.ready = ready;
+    }
+
+    // 只能由消费线程调用。先置位 parked 再检查一次 ready，与 wake 中先发布数据再读 parked 的顺序配合，唤醒不会丢失；
+    // park 可能无故返回，调用方须在循环中重新检查
+    void park() {
+        consumer = Thread.currentThread();
+        parked = true;
+        if (!ready.getAsBoolean()) {
+            LockSupport.park(this);
+        }
+        parked = false;
+    }
+
+    // 生产者发布数据后调用。环形缓冲用 lazySet 发布写位置，全屏障保证它先于读取 parked 对消费者可见
+    void wake() {
+        VarHandle.fullFence();
+        if (parked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
+
+// 一个文件的离线检测结果
+class OfflineResult {
+    private final Path file;
+    private final List<Double> eventSeconds;
+    private final double audioSeconds;
+    private final long elapsedNanos;
+
+    public OfflineResult(Path file, List<Double> eventSeconds, double audioSeconds, long elapsedNanos) {
+        this.file = file;
+        this.eventSeconds = eventSeconds;
+        this.audioSeconds = audioSeconds;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public List<Double> getEventSeconds() {
+        return eventSeconds;
+    }
+
+    public double getAudioSeconds() {
+        return audioSeconds;
+    }
+
+    // 音频时长与处理耗时之比，大于 1 表示比实时快
+    public double getRealtimeFactor() {
+        return audioSeconds / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format("%s: %d 个事件，音频 %.1f 秒，实时倍率 %.1fx",
+                file, eventSeconds.size(), audioSeconds, getRealtimeFactor()));
+        for (double seconds : eventSeconds) {
+            text.append(String.format("%n  %.3f s", seconds));
+        }
+        return text.toString();
+    }
+}
+
+// 通过内存映射读取 16 位 PCM WAV：只解析 RIFF 头，样本直接从映射区解码，多声道混合为单声道。
+// 数据区按窗口分段映射，超过 2 GB 的文件也可以读取。
+// JDK 没有公开的解除映射接口，映射区在对应的 MappedByteBuffer 被垃圾回收时才释放；同一时间只保留当前窗口，
+// close() 会丢掉它的引用，所以连续检测大量文件时最多滞留还未回收的若干个 64 MB 窗口，而不是整个文件
+class MappedWavReader implements AutoCloseable {
+    private static final long MAP_WINDOW = 64L << 20;
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final FileChannel channel;
+    private float sampleRate;
+    private int channels;
+    private int blockAlign;
+    private long dataOffset = -1;
+    private long dataLength;
+
+    private MappedByteBuffer window;
+    private long nextWindow;
+
+    public MappedWavReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            parseHeader(file);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        nextWindow = dataOffset;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getFrameCount() {
+        return dataLength / blockAlign;
+    }
+
+    // 读出归一化到 [-1, 1) 的单声道样本，返回实际个数，读完时返回 0
+    public int read(double[] target) throws IOException {
+        int count = 0;
+        while (count < target.length) {
+            if (window == null || !window.hasRemaining()) {
+                long remaining = dataOffset + dataLength - nextWindow;
+                long size = Math.min(remaining, MAP_WINDOW) / blockAlign * blockAlign;
+                if (size == 0) {
+                    break;
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, nextWindow, size);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                nextWindow += size;
+            }
+            int frames = Math.min(target.length - count, window.remaining() / blockAlign);
+            if (channels == 1) {
+                for (int i = 0; i < frames; i++) {
+                    target[count++] = window.getShort() / 32768.0;
+                }
+            } else {
+                double scale = 1.0 / (channels * 32768.0);
+                for (int i = 0; i < frames; i++) {
+                    int sum = 0;
+                    for (int c = 0; c < channels; c++) {
+                        sum += window.getShort();
+                    }
+                    target[count++] = sum * scale;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void parseHeader(Path file) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = readAt(0, 12);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {
+            throw new IOException("not a RIFF/WAVE file: " + file);
+        }
+
+        boolean hasFormat = false;
+        long position = 12;
+        while (position + 8 <= size) {
+            ByteBuffer chunk = readAt(position, 8);
+            int id = chunk.getInt(0);
+            long chunkSize = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (id == 0x20746d66) { // "fmt "
+                if (chunkSize < 16) {
+                    throw new IOException("fmt chunk too short (" + chunkSize + " bytes): " + file);
+                }
+                ByteBuffer format = readAt(position + 8, (int) Math.min(chunkSize, 26));
+                int formatTag = format.getShort(0) & 0xFFFF;
+                if (formatTag == WAVE_FORMAT_EXTENSIBLE && format.limit() >= 26) {
+                    formatTag = format.getShort(24) & 0xFFFF;
+                }
+                channels = format.getShort(2) & 0xFFFF;
+                sampleRate = format.getInt(4);
+                blockAlign = format.getShort(12) & 0xFFFF;
+                int bitsPerSample = format.getShort(14) & 0xFFFF;
+                if (formatTag != WAVE_FORMAT_PCM || bitsPerSample != 16 || channels == 0 || blockAlign != channels * 2) {
+                    throw new IOException("only 16-bit PCM WAV is supported: " + file);
+                }
+                hasFormat = true;
+            } else if (id == 0x61746164) { // "data"
+                dataOffset = position + 8;
+                dataLength = Math.min(chunkSize, size - dataOffset);
+                break;
+            }
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+        if (!hasFormat || dataOffset < 0) {
+            throw new IOException("missing fmt or data chunk: " + file);
+        }
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("truncated WAV header");
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
+
+// 预加载的音效播放器：音效在启动时一次性解码成 PCM，输出线路在构造时打开并启动。
+// play() 只把 PCM 放进队列就返回，由空闲的线路线程写出，多个音效可以同时播放
+class SoundEffectPlayer implements AutoCloseable {
+    // 每路线路的缓冲约 46 ms；线路已经启动，写入的数据会立即开始播放
+    private static final int LINE_BUFFER_FRAMES = 2048;
+
+    private final AudioFormat format;
+    private final List<byte[]> effects = new ArrayList<>();
+    private final BlockingQueue<byte[]> pending;
+    private final List<SourceDataLine> lines = new ArrayList<>();
+    private final List<Thread> voices = new ArrayList<>();
+    private final AtomicLong droppedPlays = new AtomicLong();
+
+    // 最多打开 voiceCount 路输出线路；设备能打开的更少时用已打开的线路播放，一路都打不开时抛出异常
+    public SoundEffectPlayer(Mixer mixer, AudioFormat format, int voiceCount) throws LineUnavailableException {
+        this.format = format;
+        this.pending = new ArrayBlockingQueue<>(voiceCount * 2);
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        try {
+            for (int i = 0; i < voiceCount; i++) {
+                SourceDataLine line = (SourceDataLine) (mixer == null ? AudioSystem.getLine(info) : mixer.getLine(info));
+                line.open(format, LINE_BUFFER_FRAMES * format.getFrameSize());
+                line.start();
+                lines.add(line);
+            }
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            if (lines.isEmpty()) {
+                close();
+                throw e;
+            }
+            System.out.println("播放设备只能同时打开 " + lines.size() + " 路输出: " + e.getMessage());
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            SourceDataLine line = lines.get(i);
+            Thread voice = new Thread(() -> runVoice(line), "sound-effect-" + i);
+            voice.setDaemon(true);
+            voice.start();
+            voices.add(voice);
+        }
+    }
+
+    // 解码并转换成播放格式，返回音效编号；文件不存在或无法转换时返回 -1。须在 play() 之前调用
+    public int load(String filePath) {
+        File audioFile = new File(filePath);
+        if (!audioFile.exists()) {
+            System.out.println("音频文件 " + filePath + " 不存在");
+            return -1;
+        }
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(audioFile);
+             AudioInputStream converted = AudioSystem.getAudioInputStream(format, source)) {
+            effects.add(converted.readAllBytes());
+            return effects.size() - 1;
+        } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    // 不阻塞；所有线路都在忙且队列已满时丢弃这次播放并返回 false
+    public boolean play(int effect) {
+        if (effect < 0 || effect >= effects.size()) {
+            return false;
+        }
+        if (!pending.offer(effects.get(effect))) {
+            droppedPlays.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long getDroppedPlays() {
+        return droppedPlays.get();
+    }
+
+    public int getVoiceCount() {
+        return lines.size();
+    }
+
+    private void runVoice(SourceDataLine line) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                byte[] pcm = pending.take();
+                line.write(pcm, 0, pcm.length);
+            }
+        } catch (InterruptedException e) {
+            // close() 时退出
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Thread voice : voices) {
+            voice.interrupt();
+        }
+        // 关闭线路会让正在阻塞的 write 返回
+        for (SourceDataLine line : lines) {
+            line.stop();
+            line.close();
+        }
+    }
+}
+
+// 单生产者/单消费者的无锁环形缓冲，元素为 16 位样本（播放队列里存的是音效编号）。
+// 写端只推进 writePosition，读端只推进 readPosition，用 lazySet 发布，不需要加锁；写满时多出的数据由调用方丢弃计数
+class SampleRingBuffer {
+    private final short[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    public SampleRingBuffer(int capacity) {
+        if (capacity < 1 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity is not a power of 2: " + capacity);
+        }
+        buffer = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    // 只能由生产者线程调用，返回实际写入的个数
+    public int write(short[] source, int offset, int length) {
+        long write = writePosition.get();
+        int count = Math.min(length, buffer.length - (int) (write - readPosition.get()));
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) write & mask;
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(source, offset, buffer, start, first);
+        System.arraycopy(source, offset + first, buffer, 0, count - first);
+        writePosition.lazySet(write + count);
+        return count;
+    }
+
+    // 只能由生产者线程调用：写入 source 中从 start 开始、间隔 stride 的样本，用于直接从交错的多声道数据中取出一个声道
+    public int write(ShortBuffer source, int start, int stride, int length) {
+        long write = writePosition.get();
+        int count = Math.min(length, buffer.length - (int) (write - readPosition.get()));
+        for (int i = 0; i < count; i++) {
+            buffer[(int) (write + i) & mask] = source.get(start + i * stride);
+        }
+        if (count > 0) {
+            writePosition.lazySet(write + count);
+        }
+        return Math.max(count, 0);
+    }
+
+    // 只能由生产者线程调用，缓冲已满时返回 false
+    public boolean offer(short value) {
+        long write = writePosition.get();
+        if (write - readPosition.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int) write & mask] = value;
+        writePosition.lazySet(write + 1);
+        return true;
+    }
+
+    // 只能由消费者线程调用，返回实际读出的个数
+    public int read(short[] target, int offset, int length) {
+        long read = readPosition.get();
+        int count = Math.min(length, (int) (writePosition.get() - read));
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) read & mask;
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, target, offset, first);
+        System.arraycopy(buffer, 0, target, offset + first, count - first);
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    public int size() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+}
@@ -0,0 +1,158 @@
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// 用合成信号评估检测的延迟和准确率：在底噪中按随机间隔插入拍手声（指数衰减的噪声脉冲），
+// 分别用原来的逐块峰值判定、不重叠的整块谱通量、带重叠的 STFT 和能量门控的 Goertzel 检测，
+// 统计命中、漏检、误检、延迟和每秒音频的 CPU 时间。
+// 传入目录参数时会把合成信号写成 WAV 样本（附带标注的起音时刻），便于之后离线回归
+public class ClapSnapHarness {
+    private static final float SAMPLE_RATE = 44100;
+    private static final double SECONDS = 60;
+    // 检测时刻落在真实起音之后这段时间内才算命中
+    private static final double MATCH_WINDOW_SECONDS = 0.1;
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(7);
+        List<Integer> onsets = new ArrayList<>();
+        double[] signal = synthesize(random, onsets);
+
+        if (args.length > 0) {
+            writeFixture(new File(args[0]), signal, onsets);
+        }
+
+        System.out.println("合成信号: " + SECONDS + " 秒, " + onsets.size() + " 次拍手");
+        // 基线：原来的 detectClapSnap，每次读取 4096 字节（2048 个样本）、不加窗、逐块判定频段内有没有峰值
+        evaluate("原逐块峰值 2048", onsets, detections -> runBlockPeak(signal, 2048, detections));
+        // 新的谱通量检测，但与原来一样不重叠地整块分析，用来区分检测算法和帧移各自带来的改进
+        evaluate("整块谱通量 2048/2048", onsets, detections -> run(signal, DetectorStrategy.SPECTRAL, 2048, 2048, detections));
+        evaluate("STFT 1024/128", onsets, detections -> run(signal, DetectorStrategy.SPECTRAL, 1024, 128, detections));
+        evaluate("STFT 512/64", onsets, detections -> run(signal, DetectorStrategy.SPECTRAL,
+                ClapSnapDetector.FRAME_SIZE, ClapSnapDetector.DEFAULT_HOP_SIZE, detections));
+        evaluate("Goertzel 512/64", onsets, detections -> run(signal, DetectorStrategy.GOERTZEL,
+                ClapSnapDetector.FRAME_SIZE, ClapSnapDetector.DEFAULT_HOP_SIZE, detections));
+    }
+
+    private static double[] synthesize(Random random, List<Integer> onsets) {
+        int length = (int) (SECONDS * SAMPLE_RATE);
+        double[] signal = new double[length];
+        for (int i = 0; i < length; i++) {
+            // 底噪加一点 100 Hz 的低频嗡嗡声
+            signal[i] = random.nextGaussian() * 0.003 + 0.05 * Math.sin(2 * Math.PI * 100 * i / SAMPLE_RATE);
+        }
+
+        int position = (int) (0.5 * SAMPLE_RATE);
+        while (position < length - SAMPLE_RATE) {
+            onsets.add(position);
+            double amplitude = 0.2 + random.nextDouble() * 0.6;
+            double decay = 0.004 + random.nextDouble() * 0.008;
+            for (int i = 0; i < (int) (0.1 * SAMPLE_RATE); i++) {
+                signal[position + i] += amplitude * Math.exp(-i / (decay * SAMPLE_RATE)) * (random.nextDouble() * 2 - 1);
+            }
+            position += (int) ((0.4 + random.nextDouble() * 0.8) * SAMPLE_RATE);
+        }
+        return signal;
+    }
+
+    // detect 把检测时刻（样本下标）依次加入给定的列表
+    private static void evaluate(String name, List<Integer> onsets, Consumer<List<Long>> detect) {
+        // 先不计时跑一遍让 JIT 编译完成，再用线程 CPU 时间计量第二遍
+        detect.accept(new ArrayList<>());
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        List<Long> detections = new ArrayList<>();
+        detect.accept(detections);
+        double cpuMillisPerSecond = (threads.getCurrentThreadCpuTime() - cpuStart) / 1e6 / SECONDS;
+
+        long window = (long) (MATCH_WINDOW_SECONDS * SAMPLE_RATE);
+        int hits = 0;
+        int next = 0;
+        double totalLatency = 0;
+        double maxLatency = 0;
+        boolean[] matched = new boolean[detections.size()];
+        for (int onset : onsets) {
+            while (next < detections.size() && detections.get(next) < onset) {
+                next++;
+            }
+            if (next < detections.size() && detections.get(next) - onset <= window) {
+                matched[next] = true;
+                double latency = (detections.get(next) - onset) * 1000.0 / SAMPLE_RATE;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                hits++;
+                next++;
+            }
+        }
+        int falsePositives = 0;
+        for (boolean hit : matched) {
+            if (!hit) {
+                falsePositives++;
+            }
+        }
+
+        System.out.printf("%-20s 命中 %3d/%3d  漏检 %3d  误检 %3d  平均延迟 %6.2f ms  最大延迟 %6.2f ms  CPU %6.3f ms/s%n",
+                name, hits, onsets.size(), onsets.size() - hits, falsePositives,
+                hits == 0 ? 0 : totalLatency / hits, maxLatency, cpuMillisPerSecond);
+    }
+
+    private static void run(double[] signal, DetectorStrategy strategy, int frameSize, int hopSize, List<Long> detections) {
+        OnsetDetector detector = strategy.create(SAMPLE_RATE, frameSize, hopSize, 0.3f, 2000, 4000, detections::add);
+        // 与 listen() 一样按帧移大小分块输入
+        for (int offset = 0; offset < signal.length; offset += hopSize) {
+            detector.process(signal, offset, Math.min(hopSize, signal.length - offset));
+        }
+    }
+
+    // 原来 detectClapSnap 的判定：整块做一次 FFT，频段内任一频点的幅度超过 threshold × 全频段最大幅度即算检测到，
+    // 每块独立判定。检测时刻记在块末尾，因为要读满整块才能判定
+    private static void runBlockPeak(double[] signal, int blockSize, List<Long> detections) {
+        for (int offset = 0; offset + blockSize <= signal.length; offset += blockSize) {
+            Complex[] fft = FFT.fft(Arrays.copyOfRange(signal, offset, offset + blockSize));
+            double[] magnitudes = new double[fft.length / 2];
+            double maxMagnitude = 0;
+            for (int i = 0; i < magnitudes.length; i++) {
+                magnitudes[i] = fft[i].abs();
+                maxMagnitude = Math.max(maxMagnitude, magnitudes[i]);
+            }
+            for (int i = 0; i < magnitudes.length; i++) {
+                double frequency = i * SAMPLE_RATE / blockSize;
+                if (frequency >= 2000 && frequency <= 4000 && magnitudes[i] > 0.3 * maxMagnitude) {
+                    detections.add((long) offset + blockSize);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void writeFixture(File directory, double[] signal, List<Integer> onsets) throws IOException {
+        directory.mkdirs();
+        byte[] pcm = new byte[signal.length * 2];
+        for (int i = 0; i < signal.length; i++) {
+            int sample = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(signal[i] * 32768)));
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), format, signal.length)) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, new File(directory, "synthetic_claps.wav"));
+        }
+        try (PrintWriter writer = new PrintWriter(new File(directory, "synthetic_claps.txt"), "UTF-8")) {
+            for (int onset : onsets) {
+                writer.printf("%.6f%n", onset / SAMPLE_RATE);
+            }
+        }
+        System.out.println("已写入样本: " + new File(directory, "synthetic_claps.wav").getPath());
+    }
+}
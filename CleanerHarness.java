@@ -0,0 +1,299 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Checks every TempFileCleaner mode on small temp trees with backdated mtimes: the serial and the
+// parallel sweep (deleted set, reclaimed bytes, throughput line), the sweep index skip, the SHA-256
+// deduplicating backup and its layout, the CSV report and its flush timer, the watcher's expiry queue
+// and evictToQuota. Each check works in its own directory under the system temp directory.
+public class CleanerHarness {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 7;
+    // Kept in a field so the level set below sticks; the per-file INFO lines would drown the results
+    private static final Logger CLEANER_LOGGER = Logger.getLogger(TempFileCleaner.class.getName());
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        CLEANER_LOGGER.setLevel(Level.WARNING);
+        checkSweep(false);
+        checkSweep(true);
+        checkIndexSkip();
+        checkBackup();
+        checkCsvReport();
+        checkReportFlushTimer();
+        checkWatcher();
+        checkEvictToQuota();
+        System.out.println(failures == 0 ? "all passed" : failures + " failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Only top-level entries older than DAYS go, expired directories with everything below them; an old
+    // file inside a young directory stays
+    private static void checkSweep(boolean parallel) throws IOException {
+        String name = parallel ? "parallel sweep" : "serial sweep";
+        Path work = Files.createTempDirectory("cleaner-sweep");
+        Path root = Files.createDirectories(work.resolve("temp"));
+        file(root.resolve("old.tmp"), 100, 30);
+        file(root.resolve("new.tmp"), 200, 0);
+        file(root.resolve("oldDir/sub/a.bin"), 300, 30);
+        file(root.resolve("oldDir/b.bin"), 400, 30);
+        age(root.resolve("oldDir/sub"), 30);
+        age(root.resolve("oldDir"), 30);
+        file(root.resolve("newDir/stale.bin"), 500, 30);
+
+        String out = capture(() -> {
+            if (parallel) {
+                TempFileCleaner.deleteTempFilesParallel(root.toString(), work.resolve("report.txt").toString(), DAYS, null, false, 2);
+            } else {
+                TempFileCleaner.deleteTempFiles(root.toString(), work.resolve("report.txt").toString(), DAYS, null, false);
+            }
+        });
+
+        check(name + ": deletes the expired file and directory", listTree(root),
+                set("new.tmp", "newDir", "newDir/stale.bin"));
+        check(name + ": reclaimed bytes", out.contains("Reclaimed 800 bytes in 2 deleted entries"), true);
+        check(name + ": report lines", lines(work.resolve("report.txt")),
+                set("Deleted file: " + root.resolve("old.tmp").toAbsolutePath(),
+                        "Deleted directory: " + root.resolve("oldDir").toAbsolutePath()));
+        if (parallel) {
+            // Four top-level entries plus sub/ and the two files inside the deleted directory
+            Matcher throughput = Pattern.compile("Swept (\\d+) entries in [0-9.]+ s with parallelism 2 \\(\\d+ entries/sec\\)").matcher(out);
+            check(name + ": throughput line counts every visited entry", throughput.find() ? throughput.group(1) : out, "7");
+        }
+    }
+
+    // An unchanged directory with nothing close to expiry is not scanned again; adding an entry changes
+    // its mtime and brings the scan back
+    private static void checkIndexSkip() throws IOException {
+        Path work = Files.createTempDirectory("cleaner-index");
+        Path root = Files.createDirectories(work.resolve("temp"));
+        String index = work.resolve("sweep.index").toString();
+        String report = work.resolve("report.txt").toString();
+        file(root.resolve("old.tmp"), 10, 30);
+        file(root.resolve("new.tmp"), 10, 0);
+
+        String first = capture(() -> TempFileCleaner.deleteTempFiles(root.toString(), report, DAYS, null, false, index));
+        String second = capture(() -> TempFileCleaner.deleteTempFiles(root.toString(), report, DAYS, null, false, index));
+        file(root.resolve("late.tmp"), 10, 30);
+        String third = capture(() -> TempFileCleaner.deleteTempFiles(root.toString(), report, DAYS, null, false, index));
+
+        check("index: first sweep scans", first.contains("skipping scan"), false);
+        check("index: unchanged directory is skipped", second.contains("skipping scan"), true);
+        check("index: changed directory is scanned again", third.contains("skipping scan"), false);
+        check("index: old entry added later is deleted", listTree(root), set("new.tmp"));
+    }
+
+    // Same-content files in different directories are stored once under objects/ and hard-linked from
+    // their paths relative to the swept directory
+    private static void checkBackup() throws IOException {
+        Path work = Files.createTempDirectory("cleaner-backup");
+        Path root = Files.createDirectories(work.resolve("temp"));
+        Path backup = work.resolve("backup");
+        write(root.resolve("a/x.txt"), "same", 30);
+        write(root.resolve("b/x.txt"), "same", 30);
+        write(root.resolve("c.txt"), "other", 30);
+        age(root.resolve("a"), 30);
+        age(root.resolve("b"), 30);
+
+        capture(() -> TempFileCleaner.deleteTempFiles(root.toString(), work.resolve("report.txt").toString(), DAYS, backup.toString(), false));
+
+        check("backup: sources deleted", listTree(root), set());
+        check("backup: layout", listFiles(backup, "objects"), set("a/x.txt", "b/x.txt", "c.txt"));
+        check("backup: contents", read(backup.resolve("a/x.txt")) + "," + read(backup.resolve("b/x.txt")) + "," + read(backup.resolve("c.txt")),
+                "same,same,other");
+        check("backup: one object per distinct content", listFiles(backup.resolve("objects"), null).size(), 2);
+        check("backup: duplicates share one file", Files.isSameFile(backup.resolve("a/x.txt"), backup.resolve("b/x.txt")), true);
+    }
+
+    private static void checkCsvReport() throws IOException {
+        Path work = Files.createTempDirectory("cleaner-csv");
+        Path root = Files.createDirectories(work.resolve("temp"));
+        Path report = work.resolve("report.csv");
+        file(root.resolve("old,1.tmp"), 123, 30);
+        file(root.resolve("dir/a"), 7, 30);
+        file(root.resolve("dir/b"), 8, 30);
+        age(root.resolve("dir"), 30);
+
+        capture(() -> TempFileCleaner.deleteTempFiles(root.toString(), report.toString(), DAYS, null, false));
+
+        List<String> rows = Files.readAllLines(report, StandardCharsets.UTF_8);
+        check("csv: header", rows.isEmpty() ? "" : rows.get(0), "deleted_at,type,bytes,path");
+        // deleted_at is a timestamp, compare the rest of each row
+        Set<String> rest = rows.stream().skip(1).map(row -> row.substring(row.indexOf(',') + 1)).collect(Collectors.toCollection(TreeSet::new));
+        check("csv: one row per deleted entry, quoted where needed", rest,
+                set("file,123,\"" + root.resolve("old,1.tmp").toAbsolutePath() + "\"",
+                        "directory,15," + root.resolve("dir").toAbsolutePath()));
+    }
+
+    // A line recorded while the report stays open reaches the file through the flush timer, without
+    // another deletion or close()
+    private static void checkReportFlushTimer() throws Exception {
+        Path work = Files.createTempDirectory("cleaner-flush");
+        Path report = work.resolve("report.csv");
+        TempFileCleaner.DeleteReport deleteReport = new TempFileCleaner.DeleteReport(report);
+        deleteReport.fileDeleted(work.resolve("gone.tmp"), 42);
+        long before = Files.exists(report) ? Files.size(report) : -1;
+        Thread.sleep(2_500);
+        List<String> rows = Files.readAllLines(report, StandardCharsets.UTF_8);
+        deleteReport.close();
+
+        check("flush timer: nothing written before the interval", before, 0L);
+        check("flush timer: row on disk while the report is open", rows.size() == 2 && rows.get(1).endsWith(",file,42," + work.resolve("gone.tmp").toAbsolutePath()), true);
+    }
+
+    // Expired entries go on startup, entries that expire later go when they come due, and an entry
+    // added with a backdated mtime is picked up through the watch events
+    private static void checkWatcher() throws Exception {
+        Path work = Files.createTempDirectory("cleaner-watch");
+        Path root = Files.createDirectories(work.resolve("temp"));
+        Path report = work.resolve("report.txt");
+        // days = 0: an entry expires one day after its mtime
+        file(root.resolve("expired.tmp"), 10, 0);
+        age(root.resolve("expired.tmp"), 2);
+        file(root.resolve("soon.tmp"), 10, 0);
+        setMtime(root.resolve("soon.tmp"), System.currentTimeMillis() - DAY_MILLIS + 1_500);
+        file(root.resolve("fresh.tmp"), 10, 0);
+
+        List<String> before = new ArrayList<>();
+        List<String> after = new ArrayList<>();
+        String out = capture(() -> {
+            TempFileCleaner.Watcher watcher = TempFileCleaner.watchTempFiles(root.toString(), report.toString(), 0, null, false);
+            try {
+                Thread.sleep(700);
+                before.addAll(listTree(root));
+                file(root.resolve("added.tmp"), 10, 0);
+                age(root.resolve("added.tmp"), 2);
+                Thread.sleep(2_300);
+                after.addAll(listTree(root));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                watcher.stop();
+            }
+        });
+
+        check("watcher: expired entry deleted on startup, the rest still waiting", new TreeSet<>(before), set("fresh.tmp", "soon.tmp"));
+        check("watcher: due and backdated entries deleted, fresh one kept", new TreeSet<>(after), set("fresh.tmp"));
+        check("watcher: report complete after stop", lines(report),
+                set("Deleted file: " + root.resolve("expired.tmp").toAbsolutePath(),
+                        "Deleted file: " + root.resolve("soon.tmp").toAbsolutePath(),
+                        "Deleted file: " + root.resolve("added.tmp").toAbsolutePath()));
+        check("watcher: totals", out.contains("Reclaimed 30 bytes in 3 deleted entries"), true);
+    }
+
+    // The least recently used files anywhere in the tree go first, just enough of them to get under the
+    // budget, and their backups keep the tree layout
+    private static void checkEvictToQuota() throws IOException {
+        Path work = Files.createTempDirectory("cleaner-quota");
+        Path root = Files.createDirectories(work.resolve("temp"));
+        Path backup = work.resolve("backup");
+        file(root.resolve("oldest.bin"), 100, 3);
+        file(root.resolve("sub/older.bin"), 100, 2);
+        file(root.resolve("sub/recent.bin"), 100, 1);
+        file(root.resolve("newest.bin"), 100, 0);
+
+        String out = capture(() -> TempFileCleaner.evictToQuota(root.toString(), work.resolve("report.txt").toString(), 250, backup.toString(), false));
+
+        check("quota: least recently used files evicted", listTree(root), set("newest.bin", "sub", "sub/recent.bin"));
+        check("quota: remaining bytes", out.contains("is 200 bytes (budget 250 bytes)"), true);
+        check("quota: evicted files backed up in place", listFiles(backup, "objects"), set("oldest.bin", "sub/older.bin"));
+    }
+
+    private static void check(String name, Object actual, Object expected) {
+        boolean ok = expected.equals(actual);
+        System.out.println((ok ? "ok    " : "FAIL  ") + name + (ok ? "" : ": expected " + expected + ", got " + actual));
+        if (!ok) {
+            failures++;
+        }
+    }
+
+    private interface Body {
+        void run() throws IOException;
+    }
+
+    // Runs body with System.out redirected and returns what it printed
+    private static String capture(Body body) throws IOException {
+        PrintStream original = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            body.run();
+        } finally {
+            System.setOut(original);
+        }
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void file(Path path, int size, int ageDays) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, new byte[size]);
+        age(path, ageDays);
+    }
+
+    private static void write(Path path, String content, int ageDays) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        age(path, ageDays);
+    }
+
+    private static void age(Path path, int days) throws IOException {
+        setMtime(path, System.currentTimeMillis() - days * DAY_MILLIS);
+    }
+
+    // Sets the access time too, evictToQuota goes by the later of the two
+    private static void setMtime(Path path, long millis) throws IOException {
+        FileTime time = FileTime.fromMillis(millis);
+        Files.getFileAttributeView(path, BasicFileAttributeView.class).setTimes(time, time, null);
+    }
+
+    private static String read(Path path) throws IOException {
+        return Files.exists(path) ? new String(Files.readAllBytes(path), StandardCharsets.UTF_8) : "<missing>";
+    }
+
+    private static Set<String> lines(Path path) throws IOException {
+        return Files.exists(path) ? new TreeSet<>(Files.readAllLines(path, StandardCharsets.UTF_8)) : set();
+    }
+
+    // Every entry below root as a relative path with forward slashes
+    private static Set<String> listTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(path -> !path.equals(root))
+                    .map(path -> root.relativize(path).toString().replace('\\', '/'))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    // Regular files below root, leaving out the top-level directory named skip
+    private static Set<String> listFiles(Path root, String skip) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return set();
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(path -> root.relativize(path).toString().replace('\\', '/'))
+                    .filter(path -> skip == null || !path.startsWith(skip + "/"))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private static Set<String> set(String... values) {
+        return new TreeSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,80 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 用模拟 I/O 延迟的任务比较虚拟线程模式与按 CPU 核数分配线程的 dispatchTasksLarge：
+// 吞吐量、堆内存峰值和线程数峰值。用法：IoDispatchHarness [任务数，默认 100000] [每个任务的延迟毫秒数，默认 10]
+// dispatchTasksLarge 只有核数个线程，总耗时约为 任务数 × 延迟 ÷ 核数，核数少时可以先用较少的任务数试跑
+public class IoDispatchHarness {
+    // 持有引用，否则日志级别设置可能随 Logger 对象被回收而丢失
+    private static final Logger TASK_LOGGER = Logger.getLogger(TaskProcessor.class.getName());
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        TASK_LOGGER.setLevel(Level.WARNING);
+
+        List<String> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add("task" + i);
+        }
+        Function<String, String> slowTask = task -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);  // 模拟等待 I/O
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return task.toUpperCase();
+        };
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%d 个任务，每个延迟 %d 毫秒，%d 个 CPU%n", count, latencyMillis, cpus);
+        System.out.printf("%-28s %10s %14s %14s %10s%n", "模式", "耗时 (s)", "任务/秒", "堆峰值 (MB)", "线程峰值");
+        // 默认上限，以及放宽到 4 倍时吞吐量和内存的变化；没有虚拟线程时默认上限较小，两者都是平台线程
+        int raisedCap = TaskProcessor.DEFAULT_IO_CONCURRENCY * 4;
+        measure("virtual, cap " + TaskProcessor.DEFAULT_IO_CONCURRENCY,
+                () -> TaskProcessor.dispatchTasksVirtual(tasks, TaskProcessor.DEFAULT_IO_CONCURRENCY, slowTask));
+        measure("virtual, cap " + raisedCap, () -> TaskProcessor.dispatchTasksVirtual(tasks, raisedCap, slowTask));
+        measure("dispatchTasksLarge, " + cpus + " threads", () -> TaskProcessor.dispatchTasksLarge(tasks, cpus, slowTask));
+    }
+
+    private static void measure(String name, Supplier<List<String>> dispatch) throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        threads.resetPeakThreadCount();
+
+        // 运行期间定期采样堆使用量，记录峰值
+        long[] peakHeap = {baseline};
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap[0] = Math.max(peakHeap[0], memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long start = System.nanoTime();
+        List<String> results = dispatch.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+
+        long completed = results.stream().filter(result -> result != null).count();
+        System.out.printf("%-28s %10.2f %14.0f %14.1f %10d%n",
+                name, seconds, completed / seconds, (peakHeap[0] - baseline) / 1e6, threads.getPeakThreadCount());
+    }
+}
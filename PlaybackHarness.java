@@ -0,0 +1,199 @@
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 用记录写入字节的假 Mixer 检查 SoundEffectPlayer：音效按原样写到输出线路、多次播放分摊到多路线路、
+// 设备只能打开部分线路时降级运行、完全没有输出设备时构造失败（监听时据此只检测不播放）。不需要声卡
+public class PlaybackHarness {
+    // 与 ClapSnapDetector 的播放格式相同，音效文件按这个格式生成，加载时不需要转换
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        byte[] pcm = new byte[4410 * FORMAT.getFrameSize()];  // 0.1 秒
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (byte) (i * 31 + 7);
+        }
+        File effect = File.createTempFile("effect", ".wav");
+        effect.deleteOnExit();
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), FORMAT, pcm.length / FORMAT.getFrameSize())) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, effect);
+        }
+
+        RecordingMixer mixer = new RecordingMixer(Integer.MAX_VALUE, false);
+        try (SoundEffectPlayer player = new SoundEffectPlayer(mixer.proxy(), FORMAT, 4)) {
+            int id = player.load(effect.getPath());
+            check("加载音效", id == 0);
+            check("四路线路", player.getVoiceCount() == 4 && mixer.lines.size() == 4);
+            for (int i = 0; i < 3; i++) {
+                check("第 " + (i + 1) + " 次播放入队", player.play(id));
+            }
+            check("写入 3 份音效", mixer.awaitBytes(3 * pcm.length));
+            for (RecordingLine line : mixer.lines) {
+                check("线路 " + line.index + " 写入的是完整的音效", isCopiesOf(line.written(), pcm));
+            }
+            check("不存在的音效编号", !player.play(5));
+        }
+        check("关闭后线路全部关闭", mixer.lines.stream().allMatch(line -> line.closed));
+
+        RecordingMixer limited = new RecordingMixer(2, false);
+        try (SoundEffectPlayer player = new SoundEffectPlayer(limited.proxy(), FORMAT, 4)) {
+            int id = player.load(effect.getPath());
+            check("只能打开两路时降级为两路", player.getVoiceCount() == 2);
+            check("降级后仍能播放", player.play(id) && limited.awaitBytes(pcm.length));
+        }
+
+        RecordingMixer missing = new RecordingMixer(0, true);
+        try {
+            new SoundEffectPlayer(missing.proxy(), FORMAT, 4).close();
+            check("没有输出设备时构造应当失败", false);
+        } catch (IllegalArgumentException | LineUnavailableException e) {
+            check("没有输出设备时构造失败: " + e.getMessage(), true);
+        }
+
+        System.out.println(failures == 0 ? "全部通过" : failures + " 项失败");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // written 是若干份完整的 pcm 首尾相接
+    private static boolean isCopiesOf(byte[] written, byte[] pcm) {
+        if (written.length % pcm.length != 0) {
+            return false;
+        }
+        for (int offset = 0; offset < written.length; offset += pcm.length) {
+            if (!Arrays.equals(written, offset, offset + pcm.length, pcm, 0, pcm.length)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "通过  " : "失败  ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+
+    // 只实现 SoundEffectPlayer 用到的 getLine，其余方法返回默认值
+    private static final class RecordingMixer {
+        final List<RecordingLine> lines = new ArrayList<>();
+        private final int openableLines;
+        private final boolean unsupported;
+        private int opened;
+
+        RecordingMixer(int openableLines, boolean unsupported) {
+            this.openableLines = openableLines;
+            this.unsupported = unsupported;
+        }
+
+        Mixer proxy() {
+            return (Mixer) Proxy.newProxyInstance(Mixer.class.getClassLoader(), new Class<?>[] {Mixer.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getLine")) {
+                    if (unsupported) {
+                        throw new IllegalArgumentException("不支持的线路: " + args[0]);
+                    }
+                    return newLine();
+                }
+                return defaultValue(method.getReturnType());
+            });
+        }
+
+        private synchronized SourceDataLine newLine() {
+            RecordingLine line = new RecordingLine(lines.size());
+            return (SourceDataLine) Proxy.newProxyInstance(SourceDataLine.class.getClassLoader(), new Class<?>[] {SourceDataLine.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "open":
+                                synchronized (this) {
+                                    if (opened >= openableLines) {
+                                        throw new LineUnavailableException("已达到可打开的线路数 " + openableLines);
+                                    }
+                                    opened++;
+                                    lines.add(line);
+                                }
+                                return null;
+                            case "write":
+                                return line.write((byte[]) args[0], (int) args[1], (int) args[2]);
+                            case "close":
+                                line.closed = true;
+                                return null;
+                            case "getFormat":
+                                return FORMAT;
+                            case "isOpen":
+                                return !line.closed;
+                            case "toString":
+                                return "RecordingLine#" + line.index;
+                            default:
+                                return defaultValue(method.getReturnType());
+                        }
+                    });
+        }
+
+        boolean awaitBytes(int expected) throws InterruptedException {
+            for (int i = 0; i < 200; i++) {
+                int total = 0;
+                synchronized (this) {
+                    for (RecordingLine line : lines) {
+                        total += line.written().length;
+                    }
+                }
+                if (total >= expected) {
+                    return total == expected;
+                }
+                Thread.sleep(10);
+            }
+            return false;
+        }
+    }
+
+    private static final class RecordingLine {
+        final int index;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        volatile boolean closed;
+
+        RecordingLine(int index) {
+            this.index = index;
+        }
+
+        synchronized int write(byte[] data, int offset, int length) {
+            bytes.write(data, offset, length);
+            return length;
+        }
+
+        synchronized byte[] written() {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type.isArray()) {
+            return java.lang.reflect.Array.newInstance(type.getComponentType(), 0);
+        }
+        return null;
+    }
+}
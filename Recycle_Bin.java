@@ -1,22 +1,156 @@
 // This code translates a Python script for deleting temporary files into Java.
 // It includes logging and backup functionality similar to the original Python code.
 
-import java.io.File;
-import java.io.FileWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class TempFileCleaner {
     private static final Logger logger = Logger.getLogger(TempFileCleaner.class.getName());
+    private static final long DAY_MILLIS = 1000L * 60 * 60 * 24;
+    private static final int BACKUP_WORKERS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final int BACKUP_QUEUE_CAPACITY = 1024;
+    private static final int EVICTION_BATCH_SIZE = 100_000;
     private static Date lastExecutionTime;
 
     public static void deleteTempFiles(String directoryPath, String logFilePath, int days, String backupDirectoryPath, boolean dryRun) {
+        deleteTempFiles(directoryPath, logFilePath, days, backupDirectoryPath, dryRun, null);
+    }
+
+    /**
+     * Same as {@link #deleteTempFiles(String, String, int, String, boolean)}, but keeps a {@link SweepIndex} in
+     * {@code indexFilePath} so that a directory which has not changed since the previous run, and holds nothing old
+     * enough to expire yet, is not scanned again.
+     *
+     * @param indexFilePath sweep index file, kept outside the swept directory, or {@code null} to always scan
+     */
+    public static void deleteTempFiles(String directoryPath, String logFilePath, int days, String backupDirectoryPath, boolean dryRun, String indexFilePath) {
+        sweep(directoryPath, logFilePath, days, backupDirectoryPath, dryRun, indexFilePath, TempFileCleaner::deleteDirectory, sweep -> {
+            // Traverse the directory; the walker reads the attributes of every entry once and they are reused from there
+            try {
+                forEachEntry(sweep.root, (entry, attrs) -> {
+                    if (attrs.isRegularFile()) {
+                        handleFile(entry, attrs, sweep);
+                    } else if (attrs.isDirectory()) {
+                        handleDirectory(entry, attrs, sweep);
+                    }
+                });
+            } catch (IOException e) {
+                logger.severe("Failed to scan directory " + sweep.root.toAbsolutePath() + ": " + e.getMessage());
+                sweep.oldestRemaining.accumulate(Long.MIN_VALUE);
+            }
+        });
+    }
+
+    /**
+     * Parallel variant of {@link #deleteTempFiles}. Every subdirectory of {@code directoryPath} is handled by its own
+     * fork-join task, and deleting an expired directory forks again per nested subdirectory. Age checks, backups and
+     * the entries in the delete report are the same as in the serial sweep.
+     *
+     * @param parallelism number of worker threads, or {@code <= 0} to use one per available processor
+     */
+    public static void deleteTempFilesParallel(String directoryPath, String logFilePath, int days, String backupDirectoryPath, boolean dryRun, int parallelism) {
+        deleteTempFilesParallel(directoryPath, logFilePath, days, backupDirectoryPath, dryRun, parallelism, null);
+    }
+
+    /**
+     * Parallel sweep that skips unchanged directories through a {@link SweepIndex}, see
+     * {@link #deleteTempFiles(String, String, int, String, boolean, String)}.
+     */
+    public static void deleteTempFilesParallel(String directoryPath, String logFilePath, int days, String backupDirectoryPath, boolean dryRun, int parallelism,
+                                               String indexFilePath) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        LongAdder entryCount = new LongAdder();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            sweep(directoryPath, logFilePath, days, backupDirectoryPath, dryRun, indexFilePath, dir -> deleteDirectoryParallel(pool, dir, entryCount), sweep -> {
+                long startNanos = System.nanoTime();
+                pool.invoke(new SweepTask(sweep, entryCount));
+                sweep.awaitBackups();
+
+                double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+                long entries = entryCount.sum();
+                String throughput = String.format("Swept %d entries in %.3f s with parallelism %d (%.0f entries/sec)",
+                        entries, seconds, threads, entries / seconds);
+                System.out.println(throughput);
+                logger.info(throughput);
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Keeps {@code directoryPath} under {@code maxBytes} by deleting the least recently used regular files anywhere
+     * in the tree, judged by the later of their access and modification times, with the same backup and report
+     * handling as {@link #deleteTempFiles}. Directories that end up empty are left for the age-based sweep.
+     * <p>
+     * The listing is never held in memory: each round walks the tree once, keeping only the oldest
+     * {@link #EVICTION_BATCH_SIZE} files in a bounded heap, and evicts as many of those as needed. Trees that need
+     * more evictions than that simply take several rounds.
+     *
+     * @param maxBytes byte budget for the total size of the regular files in the tree
+     */
+    public static void evictToQuota(String directoryPath, String logFilePath, long maxBytes, String backupDirectoryPath, boolean dryRun) {
         if (directoryPath == null || directoryPath.isEmpty()) {
             directoryPath = "./temp";
         }
@@ -24,34 +158,189 @@ public class TempFileCleaner {
             logFilePath = "delete_report.txt";
         }
 
-        File directory = new File(directoryPath);
-        if (!directory.exists()) {
+        Path directory = Paths.get(directoryPath);
+        if (!Files.exists(directory)) {
             System.out.println("Directory " + directoryPath + " does not exist");
             logger.info("Directory " + directoryPath + " does not exist");
             return;
         }
 
         Date now = new Date();
-        StringBuilder report = new StringBuilder();
+        DeleteReport report = new DeleteReport(Paths.get(logFilePath));
+        long footprint = -1;  // unknown until a walk completes
+        while (true) {
+            EvictionCandidates candidates = new EvictionCandidates(EVICTION_BATCH_SIZE);
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            candidates.offer(file, attrs);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        logger.warning("Skipping unreadable entry: " + file.toAbsolutePath() + ": " + exc.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.severe("Failed to scan directory " + directory.toAbsolutePath() + ": " + e.getMessage());
+                break;
+            }
+
+            footprint = candidates.getTotalBytes();
+            if (footprint <= maxBytes) {
+                break;
+            }
+            List<EvictionCandidate> victims = candidates.oldestCovering(footprint - maxBytes);
+            if (dryRun) {
+                long bytes = 0;
+                for (EvictionCandidate victim : victims) {
+                    bytes += victim.attrs.size();
+                }
+                System.out.println("Dry run: would evict " + victims.size() + " files (" + bytes + " bytes) from " + directory.toAbsolutePath());
+                logger.info("Dry run: would evict " + victims.size() + " files (" + bytes + " bytes) from " + directory.toAbsolutePath());
+                break;
+            }
+
+            BackupPipeline backup = null;
+            if (backupDirectoryPath != null && !backupDirectoryPath.isEmpty()) {
+                backup = new BackupPipeline(directory, Paths.get(backupDirectoryPath), BACKUP_WORKERS, BACKUP_QUEUE_CAPACITY);
+            }
+            SweepContext sweep = new SweepContext(directory, now.getTime(), false, backup, TempFileCleaner::deleteDirectory, report, now.getTime());
+            long freedBefore = report.getBytes();
+            for (EvictionCandidate victim : victims) {
+                backupAndRemoveFile(victim.path, victim.attrs, sweep);
+            }
+            sweep.awaitBackups();
 
-        // Traverse the directory and its subdirectories
-        for (File file : directory.listFiles()) {
-            if (file.isFile()) {
-                handleFile(file, now, days, backupDirectoryPath, dryRun, report);
-            } else if (file.isDirectory()) {
-                handleDirectory(file, now, days, backupDirectoryPath, dryRun, report);
+            long freed = report.getBytes() - freedBefore;
+            footprint -= freed;
+            if (freed == 0) {
+                logger.warning("Could not free any space in " + directory.toAbsolutePath() + ", giving up at " + footprint + " bytes");
+                break;
             }
+            if (footprint <= maxBytes) {
+                break;
+            }
+        }
+
+        finishSweep(now, report);
+        if (footprint >= 0) {
+            String summary = String.format("Footprint of %s is %d bytes (budget %d bytes)", directory.toAbsolutePath(), footprint, maxBytes);
+            System.out.println(summary);
+            logger.info(summary);
+        }
+    }
+
+    /**
+     * Starts a {@link Watcher} that keeps {@code directoryPath} clean continuously instead of in batches: every file
+     * or directory is deleted as soon as it is older than {@code days} days, judged by the same rules as
+     * {@link #deleteTempFiles}. Deletions are streamed to {@code logFilePath}, which is complete once
+     * {@link Watcher#stop()} returns.
+     *
+     * @return the running watcher, or {@code null} if the directory does not exist or cannot be watched
+     */
+    public static Watcher watchTempFiles(String directoryPath, String logFilePath, int days, String backupDirectoryPath, boolean dryRun) {
+        if (directoryPath == null || directoryPath.isEmpty()) {
+            directoryPath = "./temp";
+        }
+        if (logFilePath == null) {
+            logFilePath = "delete_report.txt";
+        }
+
+        Path directory = Paths.get(directoryPath);
+        if (!Files.isDirectory(directory)) {
+            System.out.println("Directory " + directoryPath + " does not exist");
+            logger.info("Directory " + directoryPath + " does not exist");
+            return null;
+        }
+
+        WatchService watchService;
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.severe("Failed to watch directory " + directory.toAbsolutePath() + ": " + e.getMessage());
+            return null;
         }
 
+        BackupPipeline backup = null;
+        if (backupDirectoryPath != null && !backupDirectoryPath.isEmpty()) {
+            backup = new BackupPipeline(directory, Paths.get(backupDirectoryPath), BACKUP_WORKERS, BACKUP_QUEUE_CAPACITY);
+        }
+        Watcher watcher = new Watcher(directory, days, dryRun, backup, new DeleteReport(Paths.get(logFilePath)), watchService);
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Shared driver of the serial and parallel sweeps: resolves the defaults, consults and updates the sweep index,
+     * waits for pending backups and writes the report once the engine is done.
+     */
+    private static void sweep(String directoryPath, String logFilePath, int days, String backupDirectoryPath, boolean dryRun, String indexFilePath,
+                              DirectoryDeleter deleter, SweepEngine engine) {
+        if (directoryPath == null || directoryPath.isEmpty()) {
+            directoryPath = "./temp";
+        }
+        if (logFilePath == null) {
+            logFilePath = "delete_report.txt";
+        }
+
+        Path directory = Paths.get(directoryPath);
+        if (!Files.exists(directory)) {
+            System.out.println("Directory " + directoryPath + " does not exist");
+            logger.info("Directory " + directoryPath + " does not exist");
+            return;
+        }
+
+        Date now = new Date();
+        long cutoff = expiryCutoff(now, days);
+        SweepIndex index = indexFilePath == null ? null : SweepIndex.load(Paths.get(indexFilePath));
+        if (index != null && lastExecutionTime == null && index.getLastExecution() != null) {
+            lastExecutionTime = index.getLastExecution();
+        }
+
+        if (index != null && index.isUnchanged(directory, cutoff)) {
+            System.out.println("Directory " + directoryPath + " is unchanged since the last sweep and has nothing expired, skipping scan");
+            logger.info("Directory " + directoryPath + " is unchanged since the last sweep and has nothing expired, skipping scan");
+            finishSweep(now, new DeleteReport(Paths.get(logFilePath)));
+            index.save(now);
+            return;
+        }
+
+        BackupPipeline backup = null;
+        if (backupDirectoryPath != null && !backupDirectoryPath.isEmpty()) {
+            backup = new BackupPipeline(directory, Paths.get(backupDirectoryPath), BACKUP_WORKERS, BACKUP_QUEUE_CAPACITY);
+        }
+        DeleteReport report = new DeleteReport(Paths.get(logFilePath));
+        SweepContext sweep = new SweepContext(directory, cutoff, dryRun, backup, deleter, report, now.getTime());
+        try {
+            engine.sweep(sweep);
+        } finally {
+            sweep.awaitBackups();
+        }
+
+        finishSweep(now, report);
+        if (index != null) {
+            index.record(directory, sweep.oldestRemaining.get());
+            index.save(now);
+        }
+    }
+
+    private static void finishSweep(Date now, DeleteReport report) {
         System.out.println("Files and directories meeting the criteria in the 'temp' directory have been deleted");
         logger.info("Files and directories meeting the criteria in the 'temp' directory have been deleted");
-        
-        if (report.length() > 0) {
-            try (FileWriter fileWriter = new FileWriter(logFilePath)) {
-                fileWriter.write(report.toString());
-            } catch (IOException e) {
-                logger.log(Level.SEVERE, "Failed to write delete report: " + e.getMessage(), e);
-            }
+
+        report.close();
+        if (report.getEntries() > 0) {
+            String reclaimed = String.format("Reclaimed %d bytes in %d deleted entries", report.getBytes(), report.getEntries());
+            System.out.println(reclaimed);
+            logger.info(reclaimed);
         }
 
         // Log the current execution time
@@ -60,95 +349,1093 @@ public class TempFileCleaner {
         logger.info("Last execution time: " + lastExecutionTime);
     }
 
-    private static void handleFile(File file, Date now, int days, String backupDirectoryPath, boolean dryRun, StringBuilder report) {
-        if (!file.canRead()) {
-            logger.warning("Skipping unreadable file: " + file.getAbsolutePath());
+    /**
+     * Returns the newest modification time, in epoch millis, that is still older than {@code days} whole days at
+     * {@code now}. Entries modified at or before the cutoff are expired.
+     */
+    private static long expiryCutoff(Date now, int days) {
+        return now.getTime() - (days + 1L) * DAY_MILLIS;
+    }
+
+    private static boolean isExpired(BasicFileAttributes attrs, long cutoff) {
+        return attrs.lastModifiedTime().toMillis() <= cutoff;
+    }
+
+    /**
+     * Visits the immediate entries of {@code directory} with the attributes read by the walker. Symbolic links are
+     * not followed. Entries whose attributes cannot be read are logged and skipped.
+     */
+    private static void forEachEntry(Path directory, EntryVisitor visitor) throws IOException {
+        Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                visitor.visit(file, attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                logger.warning("Skipping unreadable entry: " + file.toAbsolutePath() + ": " + exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void handleFile(Path file, BasicFileAttributes attrs, SweepContext sweep) {
+        if (!isExpired(attrs, sweep.cutoff)) {
+            sweep.keep(attrs);
+            return;
+        }
+        // Only expired files are touched, so only they pay for the access check
+        if (!Files.isReadable(file)) {
+            logger.warning("Skipping unreadable file: " + file.toAbsolutePath());
+            sweep.keep(attrs);
             return;
         }
 
-        long fileAgeInDays = (now.getTime() - file.lastModified()) / (1000 * 60 * 60 * 24);
+        backupAndRemoveFile(file, attrs, sweep);
+    }
 
-        if (fileAgeInDays > days) {
-            if (backupDirectoryPath != null && !backupDirectoryPath.isEmpty()) {
-                backupFile(file, backupDirectoryPath);
+    private static void backupAndRemoveFile(Path file, BasicFileAttributes attrs, SweepContext sweep) {
+        if (sweep.backup == null) {
+            removeFile(file, attrs, sweep);
+            return;
+        }
+        // The file is deleted by the backup worker once its copy is confirmed, the sweep moves on meanwhile
+        sweep.backup.backupFile(file).thenAccept(backedUp -> {
+            if (backedUp) {
+                removeFile(file, attrs, sweep);
+            } else {
+                logger.warning("Keeping file " + file.toAbsolutePath() + " because its backup failed");
+                sweep.failed(file, attrs);
+            }
+        });
+    }
+
+    private static void removeFile(Path file, BasicFileAttributes attrs, SweepContext sweep) {
+        if (sweep.dryRun) {
+            sweep.keep(attrs);
+            return;
+        }
+        try {
+            Files.delete(file);
+            System.out.println("Deleted file: " + file.toAbsolutePath());
+            logger.info("Deleted file: " + file.toAbsolutePath());
+            sweep.report.fileDeleted(file, attrs.size());
+        } catch (IOException e) {
+            System.out.println("Failed to delete file " + file.toAbsolutePath());
+            logger.severe("Failed to delete file " + file.toAbsolutePath());
+            sweep.failed(file, attrs);
+        }
+    }
+
+    private static void handleDirectory(Path directory, BasicFileAttributes attrs, SweepContext sweep) {
+        if (!isExpired(attrs, sweep.cutoff)) {
+            sweep.keep(attrs);
+            return;
+        }
+        if (!Files.isReadable(directory)) {
+            logger.warning("Skipping unreadable directory: " + directory.toAbsolutePath());
+            sweep.keep(attrs);
+            return;
+        }
+
+        if (sweep.backup == null) {
+            removeDirectory(directory, attrs, sweep);
+            return;
+        }
+        sweep.backup.backupDirectory(directory).thenAccept(backedUp -> {
+            if (backedUp) {
+                removeDirectory(directory, attrs, sweep);
+            } else {
+                logger.warning("Keeping directory " + directory.toAbsolutePath() + " because its backup failed");
+                sweep.failed(directory, attrs);
             }
+        });
+    }
+
+    private static void removeDirectory(Path directory, BasicFileAttributes attrs, SweepContext sweep) {
+        if (sweep.dryRun) {
+            sweep.keep(attrs);
+            return;
+        }
+        try {
+            long bytes = sweep.deleter.delete(directory);
+            System.out.println("Deleted directory: " + directory.toAbsolutePath());
+            logger.info("Deleted directory: " + directory.toAbsolutePath());
+            sweep.report.directoryDeleted(directory, bytes);
+        } catch (IOException e) {
+            System.out.println("Failed to delete directory " + directory.toAbsolutePath() + ": " + e.getMessage());
+            logger.severe("Failed to delete directory " + directory.toAbsolutePath() + ": " + e.getMessage());
+            sweep.failed(directory, attrs);
+        }
+    }
 
-            if (!dryRun) {
-                if (file.delete()) {
-                    System.out.println("Deleted file: " + file.getAbsolutePath());
-                    logger.info("Deleted file: " + file.getAbsolutePath());
+    /**
+     * @return total size of the regular files that were deleted
+     */
+    private static long deleteDirectory(Path directory) throws IOException {
+        long bytes = deleteContents(directory);
+        Files.delete(directory);
+        return bytes;
+    }
+
+    /**
+     * Deletes everything below {@code directory} but not the directory itself.
+     *
+     * @return total size of the regular files that were deleted
+     */
+    private static long deleteContents(Path directory) throws IOException {
+        long bytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            SecureDirectoryStream<Path> secure = secure(stream);
+            for (Path entry : stream) {
+                BasicFileAttributes attrs = readEntryAttributes(secure, entry);
+                if (attrs.isDirectory()) {
+                    bytes += deleteContents(entry);
+                    deleteEntry(secure, entry, true);
                 } else {
-                    System.out.println("Failed to delete file " + file.getAbsolutePath());
-                    logger.severe("Failed to delete file " + file.getAbsolutePath());
+                    deleteEntry(secure, entry, false);
+                    if (attrs.isRegularFile()) {
+                        bytes += attrs.size();
+                    }
                 }
             }
         }
+        return bytes;
     }
 
-    private static void handleDirectory(File directory, Date now, int days, String backupDirectoryPath, boolean dryRun, StringBuilder report) {
-        if (!directory.canRead()) {
-            logger.warning("Skipping unreadable directory: " + directory.getAbsolutePath());
-            return;
+    /**
+     * Returns {@code stream} as a {@link SecureDirectoryStream} if the platform provides one (Linux does), else
+     * {@code null}. Reading and deleting entries relative to the open directory costs one {@code fstatat} and one
+     * {@code unlinkat} per entry, where {@link Files#delete} would first {@code lstat} the entry again to pick between
+     * {@code unlink} and {@code rmdir}.
+     */
+    private static SecureDirectoryStream<Path> secure(DirectoryStream<Path> stream) {
+        return stream instanceof SecureDirectoryStream ? (SecureDirectoryStream<Path>) stream : null;
+    }
+
+    private static BasicFileAttributes readEntryAttributes(SecureDirectoryStream<Path> secure, Path entry) throws IOException {
+        if (secure == null) {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
         }
+        return secure.getFileAttributeView(entry.getFileName(), BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).readAttributes();
+    }
 
-        long dirAgeInDays = (now.getTime() - directory.lastModified()) / (1000 * 60 * 60 * 24);
+    private static void deleteEntry(SecureDirectoryStream<Path> secure, Path entry, boolean directory) throws IOException {
+        if (secure == null) {
+            Files.delete(entry);
+        } else if (directory) {
+            secure.deleteDirectory(entry.getFileName());
+        } else {
+            secure.deleteFile(entry.getFileName());
+        }
+    }
 
-        if (dirAgeInDays > days) {
-            if (backupDirectoryPath != null && !backupDirectoryPath.isEmpty()) {
-                backupDirectory(directory, backupDirectoryPath);
+    private static long deleteDirectoryParallel(ForkJoinPool pool, Path directory, LongAdder entryCount) throws IOException {
+        try {
+            // Runs in the pool even when called from a backup worker
+            long bytes = pool.invoke(new DeleteTreeTask(directory, entryCount));
+            Files.delete(directory);
+            return bytes;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SweepEngine {
+        /**
+         * Sweeps the immediate entries of {@code sweep.root}. Every entry goes through {@link #handleFile} or
+         * {@link #handleDirectory}, which record what is left in place.
+         */
+        void sweep(SweepContext sweep);
+    }
+
+    @FunctionalInterface
+    private interface EntryVisitor {
+        void visit(Path entry, BasicFileAttributes attrs) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface DirectoryDeleter {
+        /**
+         * Deletes {@code directory} and everything below it and returns the number of bytes freed.
+         */
+        long delete(Path directory) throws IOException;
+    }
+
+    /**
+     * Settings and results of one sweep, shared by every thread that works on it.
+     */
+    private static final class SweepContext {
+        final Path root;
+        final long cutoff;
+        final boolean dryRun;
+        final BackupPipeline backup;  // null when backups are disabled
+        final DirectoryDeleter deleter;
+        final DeleteReport report;
+        final LongAccumulator oldestRemaining;
+        // Told about expired entries that could not be backed up or deleted; set before any entry is handled
+        Consumer<Path> onFailure;
+
+        SweepContext(Path root, long cutoff, boolean dryRun, BackupPipeline backup, DirectoryDeleter deleter, DeleteReport report, long startMillis) {
+            this.root = root;
+            this.cutoff = cutoff;
+            this.dryRun = dryRun;
+            this.backup = backup;
+            this.deleter = deleter;
+            this.report = report;
+            // Anything created while the scan runs is at least this young, so the recorded oldest entry never exceeds it
+            this.oldestRemaining = new LongAccumulator(Math::min, startMillis);
+        }
+
+        /**
+         * Records an entry that stays in place for the {@link SweepIndex}.
+         */
+        void keep(BasicFileAttributes attrs) {
+            oldestRemaining.accumulate(attrs.lastModifiedTime().toMillis());
+        }
+
+        /**
+         * Records an expired entry that stays in place because its backup or deletion failed.
+         */
+        void failed(Path entry, BasicFileAttributes attrs) {
+            keep(attrs);
+            if (onFailure != null) {
+                onFailure.accept(entry);
+            }
+        }
+
+        /**
+         * Blocks until every queued backup, and the deletion waiting on it, has finished.
+         */
+        void awaitBackups() {
+            if (backup != null) {
+                backup.close();
             }
+        }
+    }
+
+    private static final class EvictionCandidate {
+        final Path path;
+        final BasicFileAttributes attrs;
+        final long lastUsed;
+
+        EvictionCandidate(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.attrs = attrs;
+            this.lastUsed = Math.max(attrs.lastAccessTime().toMillis(), attrs.lastModifiedTime().toMillis());
+        }
+    }
 
-            if (!dryRun) {
+    /**
+     * Streaming top-K selection of the least recently used files seen during one walk. The heap is ordered with the
+     * most recently used candidate on top, so it can be dropped as soon as the heap holds more than {@code capacity}
+     * files.
+     */
+    private static final class EvictionCandidates {
+        private final int capacity;
+        private final PriorityQueue<EvictionCandidate> heap =
+                new PriorityQueue<>(Comparator.comparingLong((EvictionCandidate candidate) -> candidate.lastUsed).reversed());
+        private long totalBytes;
+
+        EvictionCandidates(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer(Path path, BasicFileAttributes attrs) {
+            totalBytes += attrs.size();
+            heap.add(new EvictionCandidate(path, attrs));
+            if (heap.size() > capacity) {
+                heap.poll();
+            }
+        }
+
+        long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * Returns the least recently used candidates, oldest first, whose sizes add up to at least {@code excess}
+         * bytes, or all of them if they do not.
+         */
+        List<EvictionCandidate> oldestCovering(long excess) {
+            long heapBytes = 0;
+            for (EvictionCandidate candidate : heap) {
+                heapBytes += candidate.attrs.size();
+            }
+            while (!heap.isEmpty() && heapBytes - heap.peek().attrs.size() >= excess) {
+                heapBytes -= heap.poll().attrs.size();
+            }
+
+            List<EvictionCandidate> oldestFirst = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                oldestFirst.add(heap.poll());
+            }
+            Collections.reverse(oldestFirst);
+            return oldestFirst;
+        }
+    }
+
+    /**
+     * Handles the top-level entries of the swept directory: files inline, each subdirectory in a forked task.
+     */
+    private static class SweepTask extends RecursiveAction {
+        private final SweepContext sweep;
+        private final LongAdder entryCount;
+
+        SweepTask(SweepContext sweep, LongAdder entryCount) {
+            this.sweep = sweep;
+            this.entryCount = entryCount;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            try {
+                forEachEntry(sweep.root, (entry, attrs) -> {
+                    entryCount.increment();
+                    if (attrs.isRegularFile()) {
+                        handleFile(entry, attrs, sweep);
+                    } else if (attrs.isDirectory()) {
+                        DirectoryTask task = new DirectoryTask(entry, attrs, sweep);
+                        task.fork();
+                        subtasks.add(task);
+                    }
+                });
+            } catch (IOException e) {
+                logger.severe("Failed to scan directory " + sweep.root.toAbsolutePath() + ": " + e.getMessage());
+                sweep.oldestRemaining.accumulate(Long.MIN_VALUE);
+            }
+            for (DirectoryTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+
+    private static class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+        private final BasicFileAttributes attrs;
+        private final SweepContext sweep;
+
+        DirectoryTask(Path directory, BasicFileAttributes attrs, SweepContext sweep) {
+            this.directory = directory;
+            this.attrs = attrs;
+            this.sweep = sweep;
+        }
+
+        @Override
+        protected void compute() {
+            handleDirectory(directory, attrs, sweep);
+        }
+    }
+
+    /**
+     * Empties a directory tree, forking one task per nested subdirectory, and returns the bytes freed. Each
+     * subdirectory is removed by the task of its parent once the subtask that emptied it has finished; the top
+     * directory is left to the caller.
+     */
+    private static class DeleteTreeTask extends RecursiveTask<Long> {
+        private final Path directory;
+        private final LongAdder entryCount;
+
+        DeleteTreeTask(Path directory, LongAdder entryCount) {
+            this.directory = directory;
+            this.entryCount = entryCount;
+        }
+
+        @Override
+        protected Long compute() {
+            List<DeleteTreeTask> subtasks = new ArrayList<>();
+            long bytes = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                SecureDirectoryStream<Path> secure = secure(stream);
+                for (Path entry : stream) {
+                    entryCount.increment();
+                    BasicFileAttributes attrs = readEntryAttributes(secure, entry);
+                    if (attrs.isDirectory()) {
+                        DeleteTreeTask subtask = new DeleteTreeTask(entry, entryCount);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else {
+                        deleteEntry(secure, entry, false);
+                        if (attrs.isRegularFile()) {
+                            bytes += attrs.size();
+                        }
+                    }
+                }
+                // The stream stays open until the forked subtrees are empty, so they are removed relative to it too
+                for (DeleteTreeTask subtask : subtasks) {
+                    bytes += subtask.join();
+                    deleteEntry(secure, subtask.directory, true);
+                }
+                return bytes;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Backup stage of the sweep. Copy jobs go through a bounded queue to a small worker pool, so the sweep only
+     * waits for backups when the queue is full. File contents are stored once per SHA-256 hash under
+     * {@code objects/}, and every backed-up file is hard-linked from its path relative to the swept directory, so the
+     * backup keeps the tree layout and same-named files in different directories no longer overwrite each other.
+     */
+    static final class BackupPipeline implements AutoCloseable {
+        private static final String OBJECTS_DIRECTORY = "objects";
+
+        private final Path sourceRoot;
+        private final Path backupRoot;
+        private final Path objectsDirectory;
+        private final ThreadPoolExecutor workers;
+
+        BackupPipeline(Path sourceRoot, Path backupRoot, int workerCount, int queueCapacity) {
+            this.sourceRoot = sourceRoot.toAbsolutePath().normalize();
+            this.backupRoot = backupRoot.toAbsolutePath().normalize();
+            this.objectsDirectory = this.backupRoot.resolve(OBJECTS_DIRECTORY);
+            this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "temp-file-backup");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, (runnable, executor) -> {
+                        // A full queue blocks the sweep instead of dropping or running the copy on the sweep thread
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Backup pipeline is closed");
+                        }
+                        try {
+                            executor.getQueue().put(runnable);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while queueing backup", e);
+                        }
+                    });
+        }
+
+        /**
+         * Queues a copy of {@code file}. The returned future completes with {@code true} once the copy is on disk,
+         * or {@code false} if it failed; dependent actions run on the backup worker.
+         */
+        CompletableFuture<Boolean> backupFile(Path file) {
+            return CompletableFuture.supplyAsync(() -> copy(file), workers);
+        }
+
+        /**
+         * Queues a copy of every regular file below {@code directory}. The returned future completes with
+         * {@code true} only if all of them were backed up.
+         */
+        CompletableFuture<Boolean> backupDirectory(Path directory) {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            AtomicInteger pending = new AtomicInteger(1);
+            AtomicBoolean succeeded = new AtomicBoolean(true);
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        Files.createDirectories(backupPath(dir));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            pending.incrementAndGet();
+                            backupFile(file).thenAccept(backedUp -> {
+                                if (!backedUp) {
+                                    succeeded.set(false);
+                                }
+                                if (pending.decrementAndGet() == 0) {
+                                    result.complete(succeeded.get());
+                                }
+                            });
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                logger.info("Backing up directory: " + directory.toAbsolutePath() + " to " + backupPath(directory));
+            } catch (IOException | RejectedExecutionException e) {
+                logger.severe("Failed to back up directory " + directory.toAbsolutePath() + ": " + e.getMessage());
+                succeeded.set(false);
+            }
+            if (pending.decrementAndGet() == 0) {
+                result.complete(succeeded.get());
+            }
+            return result;
+        }
+
+        /**
+         * Waits for every queued copy and the actions depending on it.
+         */
+        @Override
+        public void close() {
+            workers.shutdown();
+            try {
+                while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.info("Waiting for " + workers.getQueue().size() + " queued backups");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warning("Interrupted while waiting for backups to finish");
+            }
+        }
+
+        private boolean copy(Path file) {
+            Path backupPath = backupPath(file);
+            try {
+                Files.createDirectories(objectsDirectory);
+                // Hash while copying so the source is read only once
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                Path staging = Files.createTempFile(objectsDirectory, "staging", ".tmp");
+                try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                    Files.copy(in, staging, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                String hash = toHex(digest.digest());
+                Path object = objectsDirectory.resolve(hash.substring(0, 2)).resolve(hash);
+                boolean duplicate = Files.exists(object);
+                if (duplicate) {
+                    Files.delete(staging);
+                } else {
+                    Files.createDirectories(object.getParent());
+                    // A concurrent move of the same hash just replaces identical content
+                    Files.move(staging, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+
+                Files.createDirectories(backupPath.getParent());
+                Files.deleteIfExists(backupPath);
                 try {
-                    deleteDirectory(directory);
-                    System.out.println("Deleted directory: " + directory.getAbsolutePath());
-                    logger.info("Deleted directory: " + directory.getAbsolutePath());
-                    report.append("Deleted directory: ").append(directory.getAbsolutePath()).append("\n");
-                } catch (IOException e) {
-                    System.out.println("Failed to delete directory " + directory.getAbsolutePath() + ": " + e.getMessage());
-                    logger.severe("Failed to delete directory " + directory.getAbsolutePath() + ": " + e.getMessage());
+                    Files.createLink(backupPath, object);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    // No hard links here (or too many of them), fall back to a plain copy
+                    Files.copy(object, backupPath, StandardCopyOption.REPLACE_EXISTING);
                 }
+                logger.info("Backed up file: " + file.toAbsolutePath() + " to " + backupPath + (duplicate ? " (deduplicated)" : ""));
+                return true;
+            } catch (IOException | NoSuchAlgorithmException e) {
+                logger.severe("Failed to back up file " + file.toAbsolutePath() + ": " + e.getMessage());
+                return false;
             }
         }
+
+        private Path backupPath(Path source) {
+            Path absolute = source.toAbsolutePath().normalize();
+            Path relative = absolute.startsWith(sourceRoot) ? sourceRoot.relativize(absolute) : absolute.getFileName();
+            return backupRoot.resolve(relative);
+        }
+
+        private static String toHex(byte[] bytes) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
     }
 
-    private static void backupFile(File file, String backupDirectoryPath) {
-        try {
-            Path backupPath = Paths.get(backupDirectoryPath, file.getName());
-            Files.createDirectories(backupPath.getParent());
-            Files.copy(file.toPath(), backupPath, StandardCopyOption.REPLACE_EXISTING);
-            logger.info("Backed up file: " + file.getAbsolutePath() + " to " + backupPath);
-        } catch (IOException e) {
-            logger.severe("Failed to back up file " + file.getAbsolutePath() + ": " + e.getMessage());
+    /**
+     * Delete report written while the sweep runs. Lines are encoded into a fixed-size buffer that goes to the file
+     * channel whenever it fills up or at least every {@link #FLUSH_INTERVAL_MILLIS}, so memory stays bounded and a
+     * sweep that dies partway leaves everything up to the last flush on disk. The interval is kept by a timer while the
+     * file is open, so lines recorded just before a long stretch without deletions are not held back until the next
+     * one or until {@link #close()}. Like before, the file is only created
+     * once something has been deleted. A report path ending in {@code .csv} gets one
+     * {@code deleted_at,type,bytes,path} row per entry instead of the plain text lines.
+     */
+    static final class DeleteReport implements Closeable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final long FLUSH_INTERVAL_MILLIS = 1000;
+        private static final String CSV_HEADER = "deleted_at,type,bytes,path\n";
+
+        // One daemon thread flushes every open report, it only ever runs the short flushIfDue
+        private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "delete-report-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final Path file;
+        private final boolean csv;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private FileChannel channel;
+        private ScheduledFuture<?> flushTimer;
+        private long lastFlushMillis;
+        private long entries;
+        private long bytes;
+        private boolean failed;
+
+        DeleteReport(Path file) {
+            this.file = file;
+            this.csv = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        }
+
+        synchronized void fileDeleted(Path file, long size) {
+            append("file", file, size);
+        }
+
+        synchronized void directoryDeleted(Path directory, long size) {
+            append("directory", directory, size);
+        }
+
+        /**
+         * Writes buffered lines if the last write is older than the flush interval. Called by the flush timer.
+         */
+        synchronized void flushIfDue() {
+            if (channel == null || failed || buffer.position() == 0
+                    || System.currentTimeMillis() - lastFlushMillis < FLUSH_INTERVAL_MILLIS) {
+                return;
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                failed = true;
+                logger.log(Level.SEVERE, "Failed to write delete report: " + e.getMessage(), e);
+            }
+        }
+
+        synchronized long getEntries() {
+            return entries;
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (channel == null) {
+                return;
+            }
+            flushTimer.cancel(false);
+            try {
+                if (!failed) {
+                    flush();
+                }
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to write delete report: " + e.getMessage(), e);
+            }
+            channel = null;
+        }
+
+        private void append(String type, Path path, long size) {
+            entries++;
+            bytes += size;
+            if (failed) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            String line = csv
+                    ? now + "," + type + "," + size + "," + csvField(path.toAbsolutePath().toString()) + "\n"
+                    : "Deleted " + type + ": " + path.toAbsolutePath() + "\n";
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    lastFlushMillis = now;
+                    flushTimer = FLUSHER.scheduleWithFixedDelay(this::flushIfDue, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                            TimeUnit.MILLISECONDS);
+                    if (csv) {
+                        put(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                put(line.getBytes(StandardCharsets.UTF_8));
+                if (now - lastFlushMillis >= FLUSH_INTERVAL_MILLIS) {
+                    flush();
+                }
+            } catch (IOException e) {
+                // Keep sweeping; the totals are still reported at the end
+                failed = true;
+                logger.log(Level.SEVERE, "Failed to write delete report: " + e.getMessage(), e);
+            }
+        }
+
+        private void put(byte[] line) throws IOException {
+            if (line.length > buffer.remaining()) {
+                flush();
+            }
+            if (line.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(line));
+            } else {
+                buffer.put(line);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+            lastFlushMillis = System.currentTimeMillis();
+        }
+
+        private void writeFully(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        private static String csvField(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
         }
     }
 
-    private static void backupDirectory(File directory, String backupDirectoryPath) {
-        try {
-            Path backupPath = Paths.get(backupDirectoryPath, directory.getName());
-            Files.createDirectories(backupPath);
-            for (File file : directory.listFiles()) {
-                if (file.isFile()) {
-                    backupFile(file, backupDirectoryPath);
+    /**
+     * Continuous cleanup of one temp directory, started by {@link #watchTempFiles}. A full scan on startup puts every
+     * entry into a priority queue ordered by the time it expires; from then on a {@link WatchService} reports new,
+     * changed and removed entries and each one is deleted (with the same backup and report handling as a sweep) as
+     * soon as it expires. Only a watch-key overflow triggers another full scan.
+     */
+    public static final class Watcher {
+        // Upper bound on a single wait, so a wall-clock change cannot hold back the next expiry for long
+        private static final long MAX_POLL_MILLIS = 1000;
+        // How long an entry whose backup or deletion failed waits before it is tried again
+        private static final long FAILURE_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+        // Stale queue nodes are only dropped once there are more of them than live ones, and at least this many
+        private static final int MIN_STALE_NODES = 1024;
+
+        private final Path root;
+        private final int days;
+        private final boolean dryRun;
+        private final BackupPipeline backup;
+        private final DeleteReport report;
+        private final WatchService watchService;
+        private final PriorityQueue<Expiry> queue = new PriorityQueue<>();
+        private final Map<Path, Long> scheduled = new HashMap<>();
+        // Filled by backup workers, drained by the watcher thread
+        private final ConcurrentLinkedQueue<Path> failures = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean running;
+
+        private Watcher(Path root, int days, boolean dryRun, BackupPipeline backup, DeleteReport report, WatchService watchService) {
+            this.root = root;
+            this.days = days;
+            this.dryRun = dryRun;
+            this.backup = backup;
+            this.report = report;
+            this.watchService = watchService;
+            this.thread = new Thread(this::run, "temp-file-watcher");
+            this.thread.setDaemon(true);
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        /**
+         * Stops watching and waits until pending backups and deletions are done and the report is closed.
+         */
+        public void stop() {
+            running = false;
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close watch service: " + e.getMessage());
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void start() {
+            running = true;
+            thread.start();
+        }
+
+        private void run() {
+            System.out.println("Watching " + root.toAbsolutePath() + " for expired files and directories");
+            logger.info("Watching " + root.toAbsolutePath() + " for expired files and directories");
+            try {
+                reconcile();
+                while (running) {
+                    expireDue();
+                    retryFailures();
+
+                    Expiry next = queue.peek();
+                    long wait = next == null ? MAX_POLL_MILLIS : Math.min(MAX_POLL_MILLIS, next.time - System.currentTimeMillis());
+                    WatchKey key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : watchService.poll();
+                    if (key != null) {
+                        processEvents(key);
+                        if (!key.reset()) {
+                            logger.warning("Directory " + root.toAbsolutePath() + " is no longer accessible, stopping watcher");
+                            break;
+                        }
+                    }
+                    dropStaleNodes();
+                }
+            } catch (ClosedWatchServiceException e) {
+                // stop() was called
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running = false;
+                if (backup != null) {
+                    backup.close();
                 }
+                finishSweep(new Date(), report);
+            }
+        }
+
+        private void processEvents(WatchKey key) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    logger.info("Watch events for " + root.toAbsolutePath() + " overflowed, rescanning");
+                    reconcile();
+                    continue;
+                }
+                Path entry = root.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    scheduled.remove(entry);
+                } else {
+                    schedule(entry);
+                }
+            }
+        }
+
+        /**
+         * Rebuilds the queue from a full scan of the directory.
+         */
+        private void reconcile() {
+            queue.clear();
+            scheduled.clear();
+            try {
+                forEachEntry(root, (entry, attrs) -> schedule(entry, attrs));
+            } catch (IOException e) {
+                logger.severe("Failed to scan directory " + root.toAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+
+        private void expireDue() {
+            long now = System.currentTimeMillis();
+            SweepContext sweep = null;
+            while (!queue.isEmpty() && queue.peek().time <= now) {
+                Expiry due = queue.poll();
+                Long current = scheduled.get(due.path);
+                if (current == null || current != due.time) {
+                    continue;  // removed or rescheduled since it was queued
+                }
+                scheduled.remove(due.path);
+
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(due.path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (sweep == null) {
+                    sweep = new SweepContext(root, expiryCutoff(new Date(now), days), dryRun, backup, TempFileCleaner::deleteDirectory, report, now);
+                    sweep.onFailure = failures::add;
+                }
+                if (!isExpired(attrs, sweep.cutoff)) {
+                    schedule(due.path, attrs);
+                } else if (attrs.isRegularFile()) {
+                    handleFile(due.path, attrs, sweep);
+                } else if (attrs.isDirectory()) {
+                    handleDirectory(due.path, attrs, sweep);
+                }
+            }
+        }
+
+        /**
+         * Puts entries whose backup or deletion failed back in the queue, unless an event has already done so.
+         */
+        private void retryFailures() {
+            long retryAt = System.currentTimeMillis() + FAILURE_RETRY_MILLIS;
+            for (Path entry; (entry = failures.poll()) != null; ) {
+                if (!scheduled.containsKey(entry)) {
+                    scheduled.put(entry, retryAt);
+                    queue.add(new Expiry(retryAt, entry));
+                }
+            }
+        }
+
+        /**
+         * A rescheduled or removed entry leaves its old node in the queue until that node comes due, which can be days
+         * away, so in a busy directory the queue would grow with churn. Every live entry has exactly one node, so the
+         * rest are stale; once they outnumber the live ones the queue is filtered, which costs one heap rebuild.
+         */
+        private void dropStaleNodes() {
+            int stale = queue.size() - scheduled.size();
+            if (stale > MIN_STALE_NODES && stale > scheduled.size()) {
+                queue.removeIf(expiry -> {
+                    Long current = scheduled.get(expiry.path);
+                    return current == null || current != expiry.time;
+                });
+            }
+        }
+
+        private void schedule(Path entry) {
+            try {
+                schedule(entry, Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+            } catch (IOException e) {
+                // Already gone again
+            }
+        }
+
+        private void schedule(Path entry, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile() && !attrs.isDirectory()) {
+                return;
+            }
+            long expiresAt = attrs.lastModifiedTime().toMillis() + (days + 1L) * DAY_MILLIS;
+            Long current = scheduled.get(entry);
+            if (current != null && current <= expiresAt) {
+                // A queued entry that got younger is re-checked when it comes due; only an earlier expiry, such as a
+                // backdated mtime, needs a new queue node
+                return;
+            }
+            scheduled.put(entry, expiresAt);
+            queue.add(new Expiry(expiresAt, entry));
+        }
+
+        private static final class Expiry implements Comparable<Expiry> {
+            final long time;
+            final Path path;
+
+            Expiry(long time, Path path) {
+                this.time = time;
+                this.path = path;
+            }
+
+            @Override
+            public int compareTo(Expiry other) {
+                return Long.compare(time, other.time);
             }
-            logger.info("Backed up directory: " + directory.getAbsolutePath() + " to " + backupPath);
-        } catch (IOException e) {
-            logger.severe("Failed to back up directory " + directory.getAbsolutePath() + ": " + e.getMessage());
         }
     }
 
-    private static void deleteDirectory(File directory) throws IOException {
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                deleteDirectory(file);
+    /**
+     * Persistent record of previous sweeps, kept in a small text file outside the swept tree. For every swept
+     * directory it stores the directory's modification time and the oldest modification time among the entries left
+     * behind. As long as the directory's mtime is unchanged no entry has been added, removed or renamed, and entries
+     * modified in place only get younger, so the directory cannot hold anything expired before that oldest entry does.
+     * An entry moved in while a sweep is running, or one whose mtime is set backwards, is picked up once the
+     * directory changes again or its recorded oldest entry expires.
+     */
+    static final class SweepIndex {
+        private static final String HEADER = "# TempFileCleaner sweep index v1";
+        private static final String LAST_EXECUTION = "last-execution";
+
+        private final Path file;
+        private final Map<String, Entry> entries = new HashMap<>();
+        private Date lastExecution;
+
+        private SweepIndex(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Reads the index, or starts an empty one if the file is missing or unreadable; an empty index only means
+         * the next sweep scans everything.
+         */
+        static SweepIndex load(Path file) {
+            SweepIndex index = new SweepIndex(file);
+            if (!Files.exists(file)) {
+                return index;
             }
-            if (!file.delete()) {
-                throw new IOException("Failed to delete file: " + file.getAbsolutePath());
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length == 2 && fields[0].equals(LAST_EXECUTION)) {
+                        index.lastExecution = new Date(Long.parseLong(fields[1]));
+                    } else if (fields.length == 3) {
+                        index.entries.put(fields[2], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.warning("Ignoring unreadable sweep index " + file.toAbsolutePath() + ": " + e.getMessage());
+                index.entries.clear();
+                index.lastExecution = null;
             }
+            return index;
         }
-        if (!directory.delete()) {
-            throw new IOException("Failed to delete directory: " + directory.getAbsolutePath());
+
+        Date getLastExecution() {
+            return lastExecution;
+        }
+
+        /**
+         * Returns {@code true} if {@code directory} still has the mtime recorded by the last sweep and its oldest
+         * remaining entry is younger than {@code cutoff}.
+         */
+        boolean isUnchanged(Path directory, long cutoff) {
+            Entry entry = entries.get(key(directory));
+            if (entry == null || entry.oldestMtime <= cutoff) {
+                return false;
+            }
+            try {
+                return Files.getLastModifiedTime(directory).toMillis() == entry.directoryMtime;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Records the state of {@code directory} after a sweep. Must be called after the sweep's own deletions so
+         * that they do not invalidate the entry.
+         */
+        void record(Path directory, long oldestMtime) {
+            try {
+                long directoryMtime = Files.getLastModifiedTime(directory).toMillis();
+                entries.put(key(directory), new Entry(directoryMtime, oldestMtime));
+            } catch (IOException e) {
+                entries.remove(key(directory));
+            }
+        }
+
+        /**
+         * Writes the index to a sibling temporary file and renames it over the old one, so a crash leaves either the
+         * previous or the new index behind, never a partial one.
+         */
+        void save(Date executionTime) {
+            lastExecution = executionTime;
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                if (file.toAbsolutePath().getParent() != null) {
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                    if (lastExecution != null) {
+                        writer.write(LAST_EXECUTION + "\t" + lastExecution.getTime());
+                        writer.newLine();
+                    }
+                    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                        writer.write(entry.getValue().directoryMtime + "\t" + entry.getValue().oldestMtime + "\t" + entry.getKey());
+                        writer.newLine();
+                    }
+                }
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                logger.severe("Failed to write sweep index " + file.toAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+
+        private static String key(Path directory) {
+            return directory.toAbsolutePath().normalize().toString();
+        }
+
+        private static final class Entry {
+            final long directoryMtime;
+            final long oldestMtime;
+
+            Entry(long directoryMtime, long oldestMtime) {
+                this.directoryMtime = directoryMtime;
+                this.oldestMtime = oldestMtime;
+            }
         }
     }
 }
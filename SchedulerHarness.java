@@ -0,0 +1,111 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Measures TaskScheduler dispatch latency (how late a task is handed to the dispatcher relative to
+// its slot) and scheduler CPU as the number of tasks grows, next to the cost of one pass of the old
+// min-scan loop, which recomputed every task's next run time before each dispatch. All tasks share one
+// period, so each second they come due together and the last one in a burst waits for the others.
+public class SchedulerHarness {
+    private static final int[] TASK_COUNTS = {1_000, 10_000, 50_000};
+
+    public static void main(String[] args) throws InterruptedException {
+        checkCalendarSlots();
+        System.out.printf("%8s %12s %12s %12s %14s %14s %14s%n",
+                "tasks", "mean (us)", "p99 (us)", "max (us)", "cpu/dispatch", "min-scan (us)", "idle cpu (ms)");
+        for (int count : TASK_COUNTS) {
+            measure(count);
+        }
+    }
+
+    private static void measure(int count) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        // Every task is due once on scheduling and then once per second, so a run of just over two
+        // seconds dispatches each task three times: one cold burst and two steady-state bursts.
+        List<ScheduledTask> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new ScheduledTask("Task" + i, new String[]{"true"}, "second", 1, "task_log.txt"));
+        }
+        long[] lateness = new long[count * 4];
+        int[] dispatched = new int[1];
+        TaskScheduler scheduler = new TaskScheduler((task, scheduledTime) -> {
+            if (dispatched[0] < lateness.length) {
+                lateness[dispatched[0]] = Duration.between(scheduledTime, LocalDateTime.now()).toNanos();
+            }
+            dispatched[0]++;
+        });
+        scheduler.setCatchUpSpread(Duration.ZERO);
+        for (ScheduledTask task : tasks) {
+            scheduler.schedule(task);
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "scheduler");
+        thread.start();
+        Thread.sleep(2_200);
+        long busyCpu = threads.getThreadCpuTime(thread.getId());
+        int busyDispatches;
+        synchronized (scheduler) {
+            busyDispatches = dispatched[0];
+        }
+
+        // Nothing else is due for almost a second now; the scheduler should just be waiting
+        Thread.sleep(500);
+        long idleCpu = threads.getThreadCpuTime(thread.getId()) - busyCpu;
+        scheduler.stop();
+        thread.join();
+
+        // Skip the first burst, which includes JIT warm-up and the time spent scheduling the tasks
+        long[] samples = Arrays.copyOfRange(lateness, Math.min(count, busyDispatches), Math.min(busyDispatches, lateness.length));
+        Arrays.sort(samples);
+        double mean = Arrays.stream(samples).average().orElse(0) / 1e3;
+        double p99 = samples.length == 0 ? 0 : samples[(int) (samples.length * 0.99)] / 1e3;
+        double max = samples.length == 0 ? 0 : samples[samples.length - 1] / 1e3;
+
+        System.out.printf("%8d %12.1f %12.1f %12.1f %11.2f us %14.1f %14.2f%n",
+                count, mean, p99, max, busyCpu / 1e3 / Math.max(1, busyDispatches), minScanMicros(tasks), idleCpu / 1e6);
+    }
+
+    // Monthly and yearly slots must stay on the anchor's day, clamped only in months that are too short
+    private static void checkCalendarSlots() {
+        checkSlots("month", LocalDateTime.of(2026, 1, 31, 9, 0),
+                "2026-02-28T09:00", "2026-03-31T09:00", "2026-04-30T09:00", "2026-05-31T09:00", "2026-06-30T09:00");
+        checkSlots("year", LocalDateTime.of(2028, 2, 29, 9, 0),
+                "2029-02-28T09:00", "2030-02-28T09:00", "2031-02-28T09:00", "2032-02-29T09:00");
+    }
+
+    private static void checkSlots(String scheduleType, LocalDateTime anchor, String... expected) {
+        ScheduledTask task = new ScheduledTask("Calendar", new String[]{"true"}, scheduleType, 1, "task_log.txt");
+        List<String> slots = new ArrayList<>();
+        LocalDateTime slot = anchor;
+        for (int i = 0; i < expected.length; i++) {
+            slot = task.nextRunTimeAfter(slot, slot);
+            slots.add(slot.toString());
+        }
+        boolean ok = slots.equals(Arrays.asList(expected));
+        System.out.println((ok ? "ok    " : "FAIL  ") + scheduleType + " from " + anchor + ": " + slots);
+    }
+
+    // One iteration of the old loop: next run time of every task, then the minimum
+    private static double minScanMicros(List<ScheduledTask> tasks) {
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            List<LocalDateTime> nextRunTimes = new ArrayList<>();
+            for (ScheduledTask task : tasks) {
+                nextRunTimes.add(task.getNextRunTime());
+            }
+            nextRunTimes.indexOf(nextRunTimes.stream().min(LocalDateTime::compareTo).orElseThrow());
+        }
+        return (System.nanoTime() - start) / 1e3 / rounds;
+    }
+}
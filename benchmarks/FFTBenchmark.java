@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 对比递归的 FFT.fft 与原地迭代的 FastFFT，运行时加 -prof gc 可以看到每次变换的内存分配
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FFTBenchmark {
+    // 2048 点对应 ClapSnapDetector 每次读取的 4096 字节
+    @Param({"256", "2048", "4096"})
+    private int size;
+
+    private double[] samples;
+    private double[] re;
+    private double[] im;
+    private FastFFT fastFFT;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        samples = new double[size];
+        for (int i = 0; i < size; i++) {
+            samples[i] = random.nextDouble() * 2 - 1;
+        }
+        re = new double[size];
+        im = new double[size];
+        fastFFT = new FastFFT(size);
+    }
+
+    @Benchmark
+    public Complex[] recursive() {
+        return FFT.fft(samples);
+    }
+
+    @Benchmark
+    public double[] iterative() {
+        System.arraycopy(samples, 0, re, 0, size);
+        Arrays.fill(im, 0);
+        fastFFT.transform(re, im);
+        return re;
+    }
+}
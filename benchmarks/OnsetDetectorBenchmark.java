@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 对比两种检测算法处理 1 秒音频的耗时，结果即每秒音频占用的 CPU 毫秒数
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OnsetDetectorBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+
+    // DetectorStrategy 只在包内可见，JMH 生成的代码无法直接给它赋值，所以参数用名称
+    @Param({"SPECTRAL", "GOERTZEL"})
+    private String strategy;
+
+    private double[] second;
+    private OnsetDetector detector;
+    private long detections;
+
+    @Setup
+    public void setup() {
+        // 底噪加两次拍手，大部分时间是安静的，与常开监听时的输入相近
+        Random random = new Random(42);
+        second = new double[SAMPLE_RATE];
+        for (int i = 0; i < SAMPLE_RATE; i++) {
+            second[i] = random.nextGaussian() * 0.003 + 0.05 * Math.sin(2 * Math.PI * 100 * i / SAMPLE_RATE);
+        }
+        for (int onset : new int[] {SAMPLE_RATE / 4, SAMPLE_RATE * 3 / 4}) {
+            for (int i = 0; i < SAMPLE_RATE / 10; i++) {
+                second[onset + i] += 0.5 * Math.exp(-i / (0.008 * SAMPLE_RATE)) * (random.nextDouble() * 2 - 1);
+            }
+        }
+        detector = DetectorStrategy.valueOf(strategy).create(SAMPLE_RATE, ClapSnapDetector.FRAME_SIZE, ClapSnapDetector.DEFAULT_HOP_SIZE,
+                0.3f, 2000, 4000, position -> detections++);
+    }
+
+    @Benchmark
+    public long oneSecond() {
+        int hopSize = ClapSnapDetector.DEFAULT_HOP_SIZE;
+        for (int offset = 0; offset < second.length; offset += hopSize) {
+            detector.process(second, offset, Math.min(hopSize, second.length - offset));
+        }
+        return detector.getPosition() + detections;
+    }
+}
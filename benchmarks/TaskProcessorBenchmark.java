@@ -0,0 +1,91 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 对比各分发路径处理一整批任务的耗时，除以批次大小即每个任务的开销
+// 1000 万个任务的批次需要较大的堆，例如 -jvmArgs -Xmx4g
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskProcessorBenchmark {
+    // 持有引用，否则日志级别设置可能随 Logger 对象被回收而丢失
+    private static final Logger TASK_LOGGER = Logger.getLogger(TaskProcessor.class.getName());
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+        @Param({"10", "1000", "100000", "10000000"})
+        int size;
+
+        List<String> tasks;
+        int numThreads;
+
+        @Setup
+        public void setup() {
+            tasks = createTasks(size);
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    // 每个任务新建一个线程，大批次跑一轮就要很久，只在小规模下比较
+    @State(Scope.Benchmark)
+    public static class SmallBatch {
+        @Param({"10", "1000"})
+        int size;
+
+        List<String> tasks;
+
+        @Setup
+        public void setup() {
+            tasks = createTasks(size);
+        }
+    }
+
+    private static List<String> createTasks(int size) {
+        // 每个任务记两条 INFO 日志，不关掉的话测到的主要是日志输出
+        TASK_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        List<String> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tasks.add("task" + i);
+        }
+        return tasks;
+    }
+
+    // 对照组：每个任务一个执行器的旧做法
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public List<String> perTaskExecutor(SmallBatch batch) {
+        return TaskProcessor.dispatchTasksSmall(batch.tasks, 1);
+    }
+
+    @Benchmark
+    public List<String> fixedPoolPerCall(Batch batch) {
+        return TaskProcessor.dispatchTasksLarge(batch.tasks, batch.numThreads);
+    }
+
+    @Benchmark
+    public List<String> forkJoin(Batch batch) {
+        return TaskProcessor.dispatchTasksForkJoin(batch.tasks);
+    }
+
+    @Benchmark
+    public List<String> forkJoinOrdered(Batch batch) {
+        return TaskProcessor.dispatchTasksOrdered(batch.tasks);
+    }
+}
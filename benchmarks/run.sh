@@ -0,0 +1,39 @@
+#!/bin/sh
+# 编译并运行 benchmarks/ 下的 JMH 基准测试，参数原样传给 JMH，例如：
+#   benchmarks/run.sh FFTBenchmark
+#   benchmarks/run.sh FFTBenchmark -prof gc
+# 仓库没有构建文件，这里下载 JMH 的 jar，把被测源文件按各自的 public 类名复制后一起编译。
+# JMH 不接受默认包中的基准测试类，而默认包中的类又不能被其他包引用，
+# 所以复制时给被测源文件加上与基准测试相同的 benchmarks 包声明。
+# 已经有这些 jar 的话可以用 JMH_LIB 指向所在目录，跳过下载。
+set -e
+
+JMH_VERSION=1.37
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=${WORK:-"${TMPDIR:-/tmp}/butler-benchmarks"}
+LIB=${JMH_LIB:-"$WORK/lib"}
+
+mkdir -p "$LIB"
+for artifact in \
+    "org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar" \
+    "org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar" \
+    "net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar" \
+    "org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"; do
+    jar="$LIB/$(basename "$artifact")"
+    if [ ! -f "$jar" ]; then
+        echo "下载 $(basename "$artifact")"
+        curl -fsSL -o "$jar" "https://repo1.maven.org/maven2/$artifact"
+    fi
+done
+
+SRC="$WORK/src/benchmarks"
+rm -rf "$WORK/src" "$WORK/classes"
+mkdir -p "$SRC" "$WORK/classes"
+{ echo "package benchmarks;"; cat "$ROOT/ClapSnapDetector.java"; } > "$SRC/ClapSnapDetector.java"
+{ echo "package benchmarks;"; cat "$ROOT/thread.java"; } > "$SRC/TaskProcessor.java"
+cp "$ROOT"/benchmarks/*.java "$SRC/"
+
+# -processorpath 不展开通配符，需要逐个列出 jar
+PROCESSOR_PATH="$LIB/jmh-generator-annprocess-$JMH_VERSION.jar:$LIB/jmh-core-$JMH_VERSION.jar"
+javac -encoding UTF-8 -cp "$LIB/*" -processorpath "$PROCESSOR_PATH" -d "$WORK/classes" "$SRC"/*.java
+java -cp "$WORK/classes:$LIB/*" org.openjdk.jmh.Main "$@"
@@ -1,21 +1,288 @@
 // This code is a scheduled task manager implemented in Java.
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Standard five-field cron expression: minute hour day-of-month month day-of-week. Fields accept *,
+// numbers, ranges (1-5), steps (*/15, 0-30/10), lists (1,15) and month/day names (JAN, MON-FRI);
+// day-of-week 0 and 7 are both Sunday, and @hourly/@daily/@weekly/@monthly/@yearly are accepted.
+// As in cron, when both day fields are restricted a day matching either of them fires.
+// Each field is compiled to a bitset, so next() works on ints: it jumps straight to the next set bit
+// of each field with numberOfTrailingZeros and only creates the LocalDateTime it returns.
+class CronExpression {
+    private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+    private static final int[] MONTH_OFFSETS = {0, 3, 2, 5, 0, 3, 5, 1, 4, 6, 2, 4};
+    // Every day-of-month/month combination repeats within this many years, so a search this long
+    // without a match means the expression can never fire (e.g. "0 0 30 2 *")
+    private static final int MAX_SEARCH_YEARS = 400;
+
+    private final String expression;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+    private final boolean daysOfMonthRestricted;
+    private final boolean daysOfWeekRestricted;
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+        minutes = parseField(fields[0], 0, 59, null);
+        hours = parseField(fields[1], 0, 23, null);
+        daysOfMonth = parseField(fields[2], 1, 31, null);
+        months = parseField(fields[3], 1, 12, MONTH_NAMES);
+        long days = parseField(fields[4], 0, 7, DAY_NAMES);
+        daysOfWeek = (days & 0x7F) | (days >>> 7 & 1);  // fold 7 onto Sunday
+        daysOfMonthRestricted = !fields[2].startsWith("*") && !fields[2].equals("?");
+        daysOfWeekRestricted = !fields[4].startsWith("*") && !fields[4].equals("?");
+    }
+
+    public static CronExpression parse(String expression) {
+        String trimmed = expression.trim();
+        switch (trimmed.toLowerCase(Locale.ROOT)) {
+            case "@yearly":
+            case "@annually":
+                trimmed = "0 0 1 1 *";
+                break;
+            case "@monthly":
+                trimmed = "0 0 1 * *";
+                break;
+            case "@weekly":
+                trimmed = "0 0 * * 0";
+                break;
+            case "@daily":
+            case "@midnight":
+                trimmed = "0 0 * * *";
+                break;
+            case "@hourly":
+                trimmed = "0 * * * *";
+                break;
+            default:
+                break;
+        }
+        String[] fields = trimmed.split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields: " + expression);
+        }
+        return new CronExpression(expression, fields);
+    }
+
+    // First matching minute strictly after 'after', in local wall-clock time
+    public LocalDateTime next(LocalDateTime after) {
+        int year = after.getYear();
+        int month = after.getMonthValue();
+        int day = after.getDayOfMonth();
+        int hour = after.getHour();
+        int minute = after.getMinute() + 1;
+        int lastYear = year + MAX_SEARCH_YEARS;
+
+        while (year <= lastYear) {
+            if (minute > 59) {
+                minute = 0;
+                hour++;
+            }
+            if (hour > 23) {
+                hour = 0;
+                day++;
+            }
+            if (day > Month.of(month).length(Year.isLeap(year))) {
+                day = 1;
+                month++;
+            }
+            if (month > 12) {
+                month = 1;
+                year++;
+            }
+
+            int nextMonth = nextBit(months, month);
+            if (nextMonth != month) {
+                if (nextMonth < 0) {
+                    year++;
+                    month = 1;
+                } else {
+                    month = nextMonth;
+                }
+                day = 1;
+                hour = 0;
+                minute = 0;
+                continue;
+            }
+            if (!dayMatches(year, month, day)) {
+                day++;
+                hour = 0;
+                minute = 0;
+                continue;
+            }
+            int nextHour = nextBit(hours, hour);
+            if (nextHour < 0) {
+                day++;
+                hour = 0;
+                minute = 0;
+                continue;
+            }
+            if (nextHour != hour) {
+                hour = nextHour;
+                minute = 0;
+            }
+            int nextMinute = nextBit(minutes, minute);
+            if (nextMinute < 0) {
+                hour++;
+                minute = 0;
+                continue;
+            }
+            return LocalDateTime.of(year, month, day, hour, nextMinute);
+        }
+        throw new IllegalArgumentException("Cron expression never fires: " + expression);
+    }
+
+    private boolean dayMatches(int year, int month, int day) {
+        boolean dayOfMonth = (daysOfMonth >>> day & 1) != 0;
+        boolean dayOfWeek = (daysOfWeek >>> dayOfWeek(year, month, day) & 1) != 0;
+        if (daysOfMonthRestricted && daysOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    // 0 = Sunday (Sakamoto's method), without going through LocalDate
+    private static int dayOfWeek(int year, int month, int day) {
+        if (month < 3) {
+            year--;
+        }
+        return (year + year / 4 - year / 100 + year / 400 + MONTH_OFFSETS[month - 1] + day) % 7;
+    }
+
+    // Smallest set bit at or above 'from', or -1
+    private static int nextBit(long bits, int from) {
+        long remaining = bits & (-1L << from);
+        return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+
+    private static long parseField(String field, int min, int max, String[] names) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            String range = part;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                range = part.substring(0, slash);
+                if (step < 1) {
+                    throw new IllegalArgumentException("Invalid cron step: " + part);
+                }
+            }
+            int start;
+            int end;
+            if (range.equals("*") || range.equals("?")) {
+                start = min;
+                end = max;
+            } else {
+                int dash = range.indexOf('-');
+                if (dash > 0) {
+                    start = parseValue(range.substring(0, dash), min, names);
+                    end = parseValue(range.substring(dash + 1), min, names);
+                } else {
+                    start = parseValue(range, min, names);
+                    end = slash >= 0 ? max : start;
+                }
+            }
+            if (start < min || end > max || start > end) {
+                throw new IllegalArgumentException("Cron field out of range " + min + "-" + max + ": " + part);
+            }
+            for (int value = start; value <= end; value += step) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+
+    private static int parseValue(String value, int min, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(value)) {
+                    // Month names start at 1, day names at 0
+                    return i + (min == 1 ? 1 : 0);
+                }
+            }
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron value: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
+
+// What to do about slots that passed while the scheduler was not running, found when a task is
+// scheduled with a last-run time loaded from the state file
+enum MisfirePolicy {
+    SKIP,       // wait for the next slot; missed runs are dropped
+    FIRE_ONCE,  // run once to catch up, then continue on schedule
+    CATCH_UP    // run once per missed slot, up to the task's max catch-up runs; older ones are dropped
+}
+
+// What to do with a firing while earlier runs of the same task are still in progress
+enum OverlapPolicy {
+    SKIP,   // drop the firing
+    QUEUE,  // run it after the current run finishes, one run at a time; at most one firing waits, later ones merge into it
+    ALLOW   // run alongside, up to the task's max concurrency; firings beyond that are dropped
+}
 
 class ScheduledTask {
+    private static final String LOG_FILE = "scheduled_tasks.log";
+    private static final String STATE_FILE = "scheduled_tasks.state";
+    // Longer output lines are split so one chatty task cannot grow a single line without bound
+    private static final int MAX_LINE_CHARS = 8192;
+    private static final ExecutorService OUTPUT_PUMPS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "task-output-pump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private String taskName;
     private String[] taskCommand;
     private String scheduleType;
     private int scheduleValue;
-    private LocalDateTime lastRunTime;
+    private CronExpression cron;  // only for scheduleType "cron"
+    private volatile LocalDateTime lastRunTime;
     private String dataFilePath;
-    private String tempDataDir = "temp";  // Temporary data directory
-    private String tempDataFile;
+    private OverlapPolicy overlapPolicy = OverlapPolicy.SKIP;
+    private int maxConcurrency = 1;
+    private Duration timeout;  // null means wait for the process indefinitely
+    private MisfirePolicy misfirePolicy = MisfirePolicy.FIRE_ONCE;
+    private int maxCatchUpRuns = 3;
+    private boolean stateLoaded;
+    private int pendingCatchUpRuns;  // catch-up runs still owed after the current one
+    private LocalDateTime calendarAnchor;  // month and year schedules only; see nextCalendarSlot
 
     public ScheduledTask(String taskName, String[] taskCommand, String scheduleType, int scheduleValue, String dataFilePath) {
         this.taskName = taskName;
@@ -23,115 +290,750 @@ class ScheduledTask {
         this.scheduleType = scheduleType;
         this.scheduleValue = scheduleValue;
         this.dataFilePath = dataFilePath;
-        this.tempDataFile = Paths.get(tempDataDir, taskName + "_temp_data.txt").toString();  // Temporary data file
     }
 
+    // Runs on a calendar schedule, e.g. CronExpression.parse("0 3 * * MON-FRI")
+    public ScheduledTask(String taskName, String[] taskCommand, CronExpression cron, String dataFilePath) {
+        this(taskName, taskCommand, "cron", 0, dataFilePath);
+        this.cron = cron;
+    }
+
+    public OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+    public void setOverlapPolicy(OverlapPolicy overlapPolicy) {
+        this.overlapPolicy = overlapPolicy;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    // Only used with OverlapPolicy.ALLOW
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public void setMisfirePolicy(MisfirePolicy misfirePolicy) {
+        this.misfirePolicy = misfirePolicy;
+    }
+
+    // Only used with MisfirePolicy.CATCH_UP
+    public void setMaxCatchUpRuns(int maxCatchUpRuns) {
+        if (maxCatchUpRuns < 1) {
+            throw new IllegalArgumentException("maxCatchUpRuns must be at least 1: " + maxCatchUpRuns);
+        }
+        this.maxCatchUpRuns = maxCatchUpRuns;
+    }
+
+    // A run still going after this long has its process tree killed and is logged as failed
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    // All tasks share one state file, read once per process; the per-task file written by older
+    // versions is only consulted when the task has no entry there yet
     private LocalDateTime loadLastRunTime() {
+        LocalDateTime stored = TaskStateStore.forPath(STATE_FILE).getLastRunTime(taskName);
+        if (stored != null) {
+            return stored;
+        }
         try {
             String lastRunStr = new String(Files.readAllBytes(Paths.get(taskName + "_last_run.txt"))).trim();
-            return LocalDateTime.parse(lastRunStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS"));
-        } catch (IOException e) {
+            return LocalDateTime.parse(lastRunStr, TaskStateStore.TIME_FORMAT);
+        } catch (IOException | DateTimeException e) {
             return null;
         }
     }
 
     private void saveLastRunTime() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(taskName + "_last_run.txt"))) {
-            writer.write(lastRunTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS")));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        TaskStateStore.forPath(STATE_FILE).record(taskName, lastRunTime);
     }
 
+    public String getTaskName() {
+        return taskName;
+    }
+
+    // First run time when the task is scheduled. The last-run time is loaded from the state file the
+    // first time, so a restart continues the schedule instead of running every task immediately.
     public LocalDateTime getNextRunTime() {
         LocalDateTime now = LocalDateTime.now();
+        if (!stateLoaded) {
+            stateLoaded = true;
+            if (lastRunTime == null) {
+                lastRunTime = loadLastRunTime();
+            }
+            if (lastRunTime != null) {
+                return nextRunTimeAfterDowntime(lastRunTime, now);
+            }
+        }
         if (lastRunTime == null) {
+            // Interval tasks run right away the first time; cron tasks wait for their first matching slot
+            if (cron != null) {
+                return cron.next(now.minusNanos(1));
+            }
             lastRunTime = now;
             return now;
         }
+        return nextRunTimeAfter(lastRunTime, now);
+    }
+
+    // Applies the misfire policy to the slots between the last run and now. Missed slots are counted
+    // arithmetically (cron schedules only look ahead as many slots as may be caught up), so even a
+    // years-old last-run time costs the same as a recent one.
+    private LocalDateTime nextRunTimeAfterDowntime(LocalDateTime last, LocalDateTime now) {
+        LocalDateTime next = nextRunTimeAfter(last, now);
+        if (misfirePolicy == MisfirePolicy.SKIP) {
+            return next;
+        }
+        int cap = misfirePolicy == MisfirePolicy.CATCH_UP ? maxCatchUpRuns : 1;
+        long missed;
+        LocalDateTime latestMissed;
+        if (cron != null) {
+            // Cron slots are absolute, so rescheduling from any of them lands on the next one after now
+            missed = 0;
+            latestMissed = last;
+            for (LocalDateTime slot = cron.next(last); slot.isBefore(now) && missed < cap; slot = cron.next(slot)) {
+                missed++;
+                latestMissed = slot;
+            }
+        } else if (scheduleType.equals("month") || scheduleType.equals("year")) {
+            ChronoUnit unit = scheduleType.equals("month") ? ChronoUnit.MONTHS : ChronoUnit.YEARS;
+            missed = unit.between(last, now) / scheduleValue;
+            if (missed > 0 && !last.plus(missed * scheduleValue, unit).isBefore(now)) {
+                missed--;
+            }
+            latestMissed = last.plus(missed * scheduleValue, unit);
+        } else {
+            long period = getPeriod().toNanos();
+            long elapsed = Duration.between(last, now).toNanos();
+            missed = Math.max(0, (elapsed + period - 1) / period - 1);
+            latestMissed = last.plus(Duration.ofNanos(period).multipliedBy(missed));
+        }
+        if (missed == 0) {
+            return next;
+        }
+
+        int runs = (int) Math.min(missed, cap);
+        writeLog("Task " + taskName + " missed " + (cron != null && missed == cap ? "at least " : "") + missed
+                + " run(s) since " + last + ", catching up with " + runs);
+        // The catch-up runs all use the latest missed slot, so the schedule carries on from there
+        pendingCatchUpRuns = runs - 1;
+        return latestMissed;
+    }
+
+    // True while the slot being dispatched is followed by more catch-up runs of the same slot
+    public boolean isCatchingUp() {
+        return pendingCatchUpRuns > 0;
+    }
+
+    // Called by the scheduler after each run: repeats the same (past) slot while catch-up runs are
+    // still owed, then moves on to the next slot that is not before now
+    public LocalDateTime rescheduleAfter(LocalDateTime slot, LocalDateTime now) {
+        if (pendingCatchUpRuns > 0) {
+            pendingCatchUpRuns--;
+            return slot;
+        }
+        return nextRunTimeAfter(slot, now);
+    }
 
-        LocalDateTime nextRunTime;
+    // First slot after 'from' that is not before 'now'. Missed periods are skipped arithmetically
+    // instead of stepping one period at a time, so a task far behind costs the same as one on time.
+    public LocalDateTime nextRunTimeAfter(LocalDateTime from, LocalDateTime now) {
         switch (scheduleType) {
-            case "second":
-                nextRunTime = lastRunTime.plusSeconds(scheduleValue);
-                break;
-            case "minute":
-                nextRunTime = lastRunTime.plusMinutes(scheduleValue);
-                break;
-            case "hour":
-                nextRunTime = lastRunTime.plusHours(scheduleValue);
-                break;
-            case "day":
-                nextRunTime = lastRunTime.plusDays(scheduleValue);
-                break;
+            case "cron":
+                return cron.next(from.isBefore(now) ? now.minusNanos(1) : from);
             case "month":
-                nextRunTime = lastRunTime.plusDays(30 * scheduleValue); // Approximate 30 days per month
-                break;
+                return nextCalendarSlot(from, now, ChronoUnit.MONTHS);
             case "year":
-                nextRunTime = lastRunTime.plusDays(365 * scheduleValue); // Approximate 365 days per year
-                break;
+                return nextCalendarSlot(from, now, ChronoUnit.YEARS);
             default:
-                throw new IllegalArgumentException("Invalid schedule type: " + scheduleType);
+                break;
         }
-
+        Duration period = getPeriod();
+        LocalDateTime nextRunTime = from.plus(period);
         if (nextRunTime.isBefore(now)) { // If the next run time is before the current time, update to the next time period
-            nextRunTime = getNextRunTime();
+            long behind = Duration.between(nextRunTime, now).toNanos();
+            long periods = (behind + period.toNanos() - 1) / period.toNanos();
+            nextRunTime = nextRunTime.plus(period.multipliedBy(periods));
         }
+        return nextRunTime;
+    }
 
+    // Months and years are calendar units rather than 30/365 days, so a monthly task stays on the
+    // same day of the month (clamped to the month's last day where it is shorter). Slots are counted
+    // in whole periods from the first slot the task was scheduled from, not from the previous slot, so
+    // a clamp does not carry over: a task anchored on Jan 31 runs on Feb 28, then Mar 31, not Mar 28.
+    private LocalDateTime nextCalendarSlot(LocalDateTime from, LocalDateTime now, ChronoUnit unit) {
+        if (calendarAnchor == null) {
+            calendarAnchor = from;
+        }
+        LocalDateTime target = from.isAfter(now) ? from : now;
+        long periods = Math.max(1, unit.between(calendarAnchor, target) / scheduleValue);
+        LocalDateTime nextRunTime = calendarAnchor.plus(periods * scheduleValue, unit);
+        while (!nextRunTime.isAfter(from) || nextRunTime.isBefore(now)) {
+            nextRunTime = calendarAnchor.plus(++periods * scheduleValue, unit);
+        }
         return nextRunTime;
     }
 
+    private Duration getPeriod() {
+        switch (scheduleType) {
+            case "second":
+                return Duration.ofSeconds(scheduleValue);
+            case "minute":
+                return Duration.ofMinutes(scheduleValue);
+            case "hour":
+                return Duration.ofHours(scheduleValue);
+            case "day":
+                return Duration.ofDays(scheduleValue);
+            default:
+                throw new IllegalArgumentException("Invalid schedule type: " + scheduleType);
+        }
+    }
+
+    // Safe to call from several threads at once. stdout and stderr are streamed line by line into the
+    // data file's shared appender while the process runs, so output shows up as it is produced.
     public void run() {
+        OutputAppender output = OutputAppender.forPath(dataFilePath);
         try {
-            // Create temporary data directory if it doesn't exist
-            Files.createDirectories(Paths.get(tempDataDir));
-
-            // Execute command and write standard output to temporary file
             ProcessBuilder processBuilder = new ProcessBuilder(taskCommand);
-            processBuilder.redirectOutput(new File(tempDataFile));
             Process process = processBuilder.start();
-            process.waitFor();
+            process.getOutputStream().close();
+            Future<?> stdout = OUTPUT_PUMPS.submit(() -> pump(process.getInputStream(), "output", output));
+            Future<?> stderr = OUTPUT_PUMPS.submit(() -> pump(process.getErrorStream(), "error output", output));
+            if (timeout == null) {
+                process.waitFor();
+            } else if (!process.waitFor(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+                throw new TimeoutException("timed out after " + timeout + ", process killed");
+            }
+            // Both pipes are at end of stream once the process has exited
+            stdout.get();
+            stderr.get();
 
             lastRunTime = LocalDateTime.now();
             saveLastRunTime();
             writeLog("Task " + taskName + " executed successfully, current time: " + LocalDateTime.now());
 
-            // Append the content of the temporary data file to the target file
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(dataFilePath, true));
-                 BufferedReader tempReader = new BufferedReader(new FileReader(tempDataFile))) {
-                String line;
-                while ((line = tempReader.readLine()) != null) {
-                    writer.write(LocalDateTime.now() + " - Task " + taskName + " executed successfully, output: " + line);
-                    writer.newLine();
+        } catch (IOException | InterruptedException | ExecutionException | TimeoutException e) {
+            String message = e instanceof ExecutionException ? e.getCause().toString() : e.getMessage();
+            writeLog("Task " + taskName + " execution failed: " + message);
+            try {
+                output.append("Task " + taskName + " execution failed: " + message);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Splits the stream into lines without BufferedReader.readLine, so a line longer than
+    // MAX_LINE_CHARS is emitted in pieces instead of being buffered whole
+    private Void pump(InputStream stream, String label, OutputAppender output) throws IOException, InterruptedException {
+        String prefix = "Task " + taskName + " " + label + ": ";
+        try (Reader reader = new InputStreamReader(stream)) {
+            char[] buffer = new char[MAX_LINE_CHARS];
+            StringBuilder line = new StringBuilder(prefix);
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\n' || line.length() - prefix.length() == MAX_LINE_CHARS) {
+                        output.append(line.toString());
+                        line.setLength(prefix.length());
+                    }
+                    if (c != '\n' && c != '\r') {
+                        line.append(c);
+                    }
                 }
             }
+            if (line.length() > prefix.length()) {
+                output.append(line.toString());
+            }
+        }
+        return null;
+    }
+
+    void writeLog(String message) {
+        try {
+            OutputAppender.forPath(LOG_FILE).append(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+// One per output file (the scheduler log and each data file), shared by every task writing to it.
+// Callers put finished lines on a bounded queue and a single writer thread drains it in batches into
+// one FileChannel that stays open, taking the timestamp once per batch and forcing to disk once per
+// batch, so concurrent writers share a single commit. When the writer falls behind, append() blocks,
+// which stalls a pump and in turn the process writing to its pipe, so memory stays bounded.
+class OutputAppender {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long SHUTDOWN_DRAIN_MILLIS = 1000;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final Map<String, OutputAppender> APPENDERS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // Lines appended but not yet written out (or dropped after a write error)
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private OutputAppender(String path) {
+        this.path = Paths.get(path);
+        Thread writer = new Thread(this::writeLoop, "output-appender-" + this.path.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+        // Give lines still queued on a normal shutdown a moment to reach the file
+        Runtime.getRuntime().addShutdownHook(new Thread(this::awaitDrained));
+    }
+
+    public static OutputAppender forPath(String path) {
+        return APPENDERS.computeIfAbsent(path, OutputAppender::new);
+    }
+
+    public void append(String line) throws InterruptedException {
+        pending.incrementAndGet();
+        try {
+            lines.put(line);
+        } catch (InterruptedException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>(QUEUE_CAPACITY);
+        FileChannel channel = null;
+        try {
+            while (true) {
+                batch.add(lines.take());
+                lines.drainTo(batch);
+                byte[] timestamp = (LocalDateTime.now() + " - ").getBytes(Charset.defaultCharset());
+                try {
+                    if (channel == null) {
+                        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    }
+                    for (String line : batch) {
+                        put(channel, timestamp);
+                        put(channel, line.getBytes(Charset.defaultCharset()));
+                        put(channel, LINE_SEPARATOR);
+                    }
+                    drain(channel);
+                    channel.force(false);
+                } catch (IOException e) {
+                    // Drop this batch and reopen the file for the next one
+                    e.printStackTrace();
+                    buffer.clear();
+                    closeQuietly(channel);
+                    channel = null;
+                }
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            closeQuietly(channel);
+        }
+    }
+
+    private void awaitDrained() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_DRAIN_MILLIS);
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
 
-        } catch (IOException | InterruptedException e) {
-            writeLog("Task " + taskName + " execution failed: " + e.getMessage());
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(dataFilePath, true))) {
-                writer.write(LocalDateTime.now() + " - Task " + taskName + " execution failed: " + e.getMessage());
-                writer.newLine();
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
+    private void put(FileChannel channel, byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            drain(channel);
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                channel.write(large);
             }
-        } finally {
-            // Clean up temporary data file
+        } else {
+            buffer.put(bytes);
+        }
+    }
+
+    private void drain(FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
             try {
-                Files.deleteIfExists(Paths.get(tempDataFile));
+                channel.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
+}
+
+// Last-run times of all tasks in one compact file (one "time<TAB>task name" line per task) instead of
+// one file per task, so a restart needs a single read. record() only updates memory; a background
+// thread rewrites the file at most once per COMMIT_INTERVAL_MILLIS, so runs finishing close together
+// share one write. Each write goes to a temp file that is forced and then atomically renamed over the
+// old one, so a crash leaves either the previous or the new state, never a torn file. Updates from the
+// last interval before a crash can be lost, which at worst makes a task run once more on restart.
+class TaskStateStore {
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+    private static final long COMMIT_INTERVAL_MILLIS = 1000;
+    private static final Map<String, TaskStateStore> STORES = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Map<String, LocalDateTime> lastRunTimes = new HashMap<>();
+    private final Object commitLock = new Object();
+    private boolean dirty;
+
+    private TaskStateStore(String path) {
+        this.path = Paths.get(path);
+        load();
+        Thread committer = new Thread(this::commitLoop, "task-state-committer");
+        committer.setDaemon(true);
+        committer.start();
+        // Commit what is still pending on a normal shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(this::commit));
+    }
+
+    public static TaskStateStore forPath(String path) {
+        return STORES.computeIfAbsent(path, TaskStateStore::new);
+    }
+
+    public synchronized LocalDateTime getLastRunTime(String taskName) {
+        return lastRunTimes.get(taskName);
+    }
 
-    private void writeLog(String message) {
-        try (BufferedWriter logWriter = new BufferedWriter(new FileWriter("scheduled_tasks.log", true))) {
-            logWriter.write(LocalDateTime.now() + " - " + message);
-            logWriter.newLine();
+    public synchronized void record(String taskName, LocalDateTime lastRunTime) {
+        lastRunTimes.put(taskName, lastRunTime);
+        if (!dirty) {
+            dirty = true;
+            notifyAll();
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(path)) {
+                String[] fields = line.split("\t", 2);
+                if (fields.length == 2) {
+                    try {
+                        lastRunTimes.put(fields[1], LocalDateTime.parse(fields[0], TIME_FORMAT));
+                    } catch (DateTimeException e) {
+                        // Skip a damaged entry; that task just runs as if it had never run
+                    }
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private void commitLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (!dirty) {
+                        wait();
+                    }
+                }
+                // Let other runs finishing around now land in the same commit
+                Thread.sleep(COMMIT_INTERVAL_MILLIS);
+                commit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit() {
+        StringBuilder content = new StringBuilder();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            for (Map.Entry<String, LocalDateTime> entry : lastRunTimes.entrySet()) {
+                content.append(entry.getValue().format(TIME_FORMAT)).append('\t').append(entry.getKey()).append('\n');
+            }
+        }
+
+        synchronized (commitLock) {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer bytes = ByteBuffer.wrap(content.toString().getBytes(Charset.defaultCharset()));
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                e.printStackTrace();
+                // Try again with the next commit
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+}
+
+// Called by the scheduler for every due task, with the slot it was due at
+interface TaskDispatcher {
+    void dispatch(ScheduledTask task, LocalDateTime scheduledTime);
+
+    // Same, but calls onFinished once the run is over or has been dropped. The scheduler uses it for
+    // catch-up runs, which must not start until the previous one is done. Dispatchers that run the
+    // task before returning can keep this default.
+    default void dispatch(ScheduledTask task, LocalDateTime scheduledTime, Runnable onFinished) {
+        dispatch(task, scheduledTime);
+        onFinished.run();
+    }
+}
+
+// Scheduler core: tasks sit in a priority queue ordered by next run time, so finding the next due task
+// is O(1) and rescheduling after a run is O(log n). The loop waits until the head is due rather than
+// recomputing every task's next run time, so an idle scheduler costs nothing regardless of task count.
+// Run times are local wall-clock times; they are turned into instants in the system zone for ordering
+// and waiting, so a DST change during a wait does not make a task fire an hour early or late. A time in
+// a spring-forward gap fires just after the gap; one in a fall-back overlap fires once, at the first.
+class TaskScheduler {
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(
+            Comparator.comparing((Entry entry) -> entry.dueAt).thenComparingLong(entry -> entry.sequence));
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final TaskDispatcher dispatcher;
+    private long sequence;
+    private boolean running = true;
+    private Duration catchUpSpread = Duration.ofSeconds(30);
+
+    public TaskScheduler(TaskDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    // Tasks that are already due when scheduled (first runs and catch-up runs after downtime) are
+    // spread evenly over this window instead of all starting at once when the process comes up
+    public synchronized void setCatchUpSpread(Duration catchUpSpread) {
+        this.catchUpSpread = catchUpSpread;
+    }
+
+    public synchronized void schedule(ScheduledTask task) {
+        LocalDateTime runTime = task.getNextRunTime();
+        queue.add(new Entry(task, runTime, spreadIfPast(runTime), sequence++));
+        notifyAll();
+    }
+
+    private Instant spreadIfPast(LocalDateTime runTime) {
+        Instant dueAt = runTime.atZone(zone).toInstant();
+        Instant now = Instant.now();
+        if (dueAt.isBefore(now) && !catchUpSpread.isZero()) {
+            // Golden-ratio sequence: however many tasks arrive, consecutive ones land far apart
+            double fraction = (sequence * 0.6180339887498949) % 1;
+            dueAt = now.plusNanos((long) (catchUpSpread.toNanos() * fraction));
+        }
+        return dueAt;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        notifyAll();
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    // Dispatches due tasks until stop() is called. Tasks due at the same time run in scheduling order;
+    // each one is rescheduled from the slot it was due at, not from when it finished, so runs do not drift.
+    // A task owing more catch-up runs is left out of the queue until the current run finishes, so its
+    // catch-up runs go one at a time whatever its overlap policy, each spread like a task due on scheduling.
+    public void run() throws InterruptedException {
+        while (true) {
+            Entry due = takeDue();
+            if (due == null) {
+                return;
+            }
+            boolean catchingUp;
+            synchronized (this) {
+                catchingUp = due.task.isCatchingUp();
+            }
+            if (catchingUp) {
+                dispatcher.dispatch(due.task, due.runTime, () -> requeueCatchUp(due));
+                continue;
+            }
+            dispatcher.dispatch(due.task, due.runTime);
+            synchronized (this) {
+                LocalDateTime next = due.task.rescheduleAfter(due.runTime, LocalDateTime.now());
+                queue.add(new Entry(due.task, next, next.atZone(zone).toInstant(), sequence++));
+            }
+        }
+    }
+
+    // Called by the dispatcher, possibly on a worker thread, once a catch-up run is over
+    private synchronized void requeueCatchUp(Entry done) {
+        LocalDateTime next = done.task.rescheduleAfter(done.runTime, LocalDateTime.now());
+        queue.add(new Entry(done.task, next, spreadIfPast(next), sequence++));
+        notifyAll();
+    }
+
+    private synchronized Entry takeDue() throws InterruptedException {
+        while (running) {
+            Entry head = queue.peek();
+            if (head == null) {
+                wait();
+                continue;
+            }
+            long waitNanos = Duration.between(Instant.now(), head.dueAt).toNanos();
+            if (waitNanos <= 0) {
+                return queue.poll();
+            }
+            wait(TimeUnit.NANOSECONDS.toMillis(waitNanos), (int) (waitNanos % 1_000_000));
+        }
+        return null;
+    }
+
+    private static class Entry {
+        private final ScheduledTask task;
+        private final LocalDateTime runTime;
+        private final Instant dueAt;
+        private final long sequence;
+
+        Entry(ScheduledTask task, LocalDateTime runTime, Instant dueAt, long sequence) {
+            this.task = task;
+            this.runTime = runTime;
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+        }
+    }
+}
+
+// Runs each dispatched task on a worker pool so a long or hung process never holds up the scheduler
+// loop, and applies the task's overlap policy when earlier runs are still going. Workers spend nearly
+// all their time in Process.waitFor, so the pool is unbounded and threads are reused once idle.
+class ConcurrentDispatcher implements TaskDispatcher {
+    private final ExecutorService workers;
+    private final Map<ScheduledTask, RunState> states = new ConcurrentHashMap<>();
+
+    public ConcurrentDispatcher() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "task-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Called on the scheduler thread; never blocks
+    @Override
+    public void dispatch(ScheduledTask task, LocalDateTime scheduledTime) {
+        dispatch(task, scheduledTime, () -> { });
+    }
+
+    // onFinished runs on the worker once the run is over, or right away if the firing is dropped or merged
+    @Override
+    public void dispatch(ScheduledTask task, LocalDateTime scheduledTime, Runnable onFinished) {
+        RunState state = states.computeIfAbsent(task, key -> new RunState());
+        boolean dropped = false;
+        synchronized (state) {
+            switch (task.getOverlapPolicy()) {
+                case SKIP:
+                    if (state.running > 0) {
+                        task.writeLog("Task " + task.getTaskName() + " skipped at " + scheduledTime + ", previous run still in progress");
+                        dropped = true;
+                    }
+                    break;
+                case QUEUE:
+                    if (state.running > 0) {
+                        // One waiting run covers every firing behind it, so a run that outlasts many
+                        // periods cannot build an ever-growing backlog
+                        if (state.queued > 0) {
+                            task.writeLog("Task " + task.getTaskName() + " firing at " + scheduledTime
+                                    + " merged into the run already queued");
+                            dropped = true;
+                        } else {
+                            state.queued = 1;
+                            state.queuedOnFinished = onFinished;
+                            return;
+                        }
+                    }
+                    break;
+                case ALLOW:
+                    if (state.running >= task.getMaxConcurrency()) {
+                        task.writeLog("Task " + task.getTaskName() + " skipped at " + scheduledTime + ", "
+                                + state.running + " runs already in progress");
+                        dropped = true;
+                    }
+                    break;
+            }
+            if (!dropped) {
+                state.running++;
+            }
+        }
+        if (dropped) {
+            onFinished.run();
+            return;
+        }
+        workers.execute(() -> execute(task, state, onFinished));
+    }
+
+    // Keeps draining queued firings on the same worker so QUEUE runs stay one at a time. The run is
+    // counted as finished before onFinished is called, so a firing that callback triggers is not
+    // mistaken for an overlap.
+    private void execute(ScheduledTask task, RunState state, Runnable onFinished) {
+        while (true) {
+            task.run();
+            Runnable next;
+            synchronized (state) {
+                next = state.queuedOnFinished;
+                if (state.queued == 0) {
+                    state.running--;
+                } else {
+                    state.queued = 0;
+                    state.queuedOnFinished = null;
+                }
+            }
+            onFinished.run();
+            if (next == null) {
+                return;
+            }
+            onFinished = next;
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private static class RunState {
+        private int running;
+        private int queued;  // 0 or 1
+        private Runnable queuedOnFinished;
+    }
 }
 
 public class Main {
@@ -142,26 +1044,17 @@ public class Main {
         tasks.add(new ScheduledTask("Task2", new String[]{"python", "task2.py"}, "hour", 6, "task_log.txt")); // Execute every 6 hours
         tasks.add(new ScheduledTask("Task3", new String[]{"python", "task3.py"}, "day", 1, "task_log.txt")); // Execute daily
 
-        while (true) {
-            // Get the next run time for each task
-            List<LocalDateTime> nextRunTimes = new ArrayList<>();
-            for (ScheduledTask task : tasks) {
-                nextRunTimes.add(task.getNextRunTime());
-            }
+        // The daily task can run long; kill it if it hangs so it never blocks its next day's run
+        tasks.get(2).setTimeout(Duration.ofHours(2));
 
-            // Find the task with the earliest next run time
-            int minIndex = nextRunTimes.indexOf(nextRunTimes.stream().min(LocalDateTime::compareTo).orElseThrow());
-            LocalDateTime nextRunTime = nextRunTimes.get(minIndex);
-
-            // Wait until the next run time
-            try {
-                Thread.sleep(Duration.between(LocalDateTime.now(), nextRunTime).toMillis());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-
-            // Execute the task with the earliest next run time  
-            tasks.get(minIndex).run();
+        TaskScheduler scheduler = new TaskScheduler(new ConcurrentDispatcher());
+        for (ScheduledTask task : tasks) {
+            scheduler.schedule(task);
+        }
+        try {
+            scheduler.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -1,14 +1,60 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class TaskProcessor {
 
     private static final Logger LOGGER = Logger.getLogger(TaskProcessor.class.getName());
 
+    // 长期存活的工作窃取线程池，所有批次共用，不再为每次调用或每个任务创建线程
+    private static final ForkJoinPool DISPATCH_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // 根据主机负载和任务的排队情况决定同时处理任务的线程数，上限是线程池的大小。
+    // 这个上限只决定是否继续拆出可窃取的子任务，不是许可证：已经拆出或被窃取的子任务照常执行，
+    // 上限降低时正在处理的线程数要等这些子任务完成后才会降下来，短时间内可能超过上限
+    private static final ConcurrencyController CONCURRENCY = new ConcurrencyController(DISPATCH_POOL.getParallelism());
+
+    // 子任务拆到这个大小就不再拆分，避免拆分本身的开销超过处理任务的开销
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    // 本线程队列里积压的子任务超过这个数，说明其他线程已有足够的任务可窃取，不必继续拆分
+    private static final int SURPLUS_THRESHOLD = 3;
+
+    // 每个任务一个线程的执行器：JDK 21 起使用虚拟线程，等待 I/O 时不占用平台线程；
+    // 更早的 JDK 上退回到按需创建的守护线程，同时进行的任务数仍由调用方的信号量限制
+    private static final ExecutorService PER_TASK_EXECUTOR = createPerTaskExecutor();
+
+    // I/O 密集型任务默认最多同时进行的数量。虚拟线程只占少量堆内存，可以同时进行上万个；
+    // 退回平台线程（按需创建的线程池是 ThreadPoolExecutor）时每个线程都有自己的栈和内核线程，上限要小得多
+    public static final int DEFAULT_IO_CONCURRENCY = PER_TASK_EXECUTOR instanceof ThreadPoolExecutor ? 256 : 10_000;
+
+    // 带重试的分发中每个任务最多尝试的次数，以及重试退避的基础延迟和上限
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 30_000;
+
+    // 只负责在退避时间到达后重新提交失败的任务，任务本身不在这个线程上执行
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     // 模拟处理任务的函数
     public static String doSomething(String task) {
         return task.toUpperCase();
@@ -19,61 +65,94 @@ public class TaskProcessor {
         return Arrays.asList("task1", "task2", "task3", "task4", "task5", "task6", "task7", "task8", "task9", "task10");
     }
 
-    // 定义任务处理函数
-    public static void processTask(String task, BlockingQueue<String> resultQueue) {
+    // 定义任务处理函数，失败时记录错误并返回 null
+    public static String processTask(String task) {
+        return processTask(task, TaskProcessor::doSomething);
+    }
+
+    // 使用指定的处理函数代替 doSomething
+    public static String processTask(String task, Function<String, String> handler) {
         long startTime = System.currentTimeMillis();
         try {
-            String taskResult = doSomething(task);
-            resultQueue.put(taskResult);
+            String taskResult = handler.apply(task);
             LOGGER.log(Level.INFO, "任务 {0} 处理成功.", task);
+            return taskResult;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "处理任务 {0} 时发生错误: {1}", new Object[] {task, e.getMessage()});
+            return null;
         } finally {
             long endTime = System.currentTimeMillis();
             LOGGER.log(Level.INFO, "任务 {0} 完成，耗时 {1} 毫秒.", new Object[] {task, (endTime - startTime)});
         }
     }
 
+    // 处理任务并把结果放入结果队列，失败的任务没有结果
+    public static void processTask(String task, BlockingQueue<String> resultQueue) {
+        processTask(task, resultQueue, TaskProcessor::doSomething);
+    }
+
+    public static void processTask(String task, BlockingQueue<String> resultQueue, Function<String, String> handler) {
+        String taskResult = processTask(task, handler);
+        if (taskResult != null) {
+            try {
+                resultQueue.put(taskResult);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.SEVERE, "保存任务 {0} 的结果时被打断", task);
+            }
+        }
+    }
+
     // 工作线程函数
     public static void worker(List<String> subtasks, BlockingQueue<String> resultQueue) {
+        worker(subtasks, resultQueue, TaskProcessor::doSomething);
+    }
+
+    public static void worker(List<String> subtasks, BlockingQueue<String> resultQueue, Function<String, String> handler) {
         for (String task : subtasks) {
-            processTask(task, resultQueue);
+            processTask(task, resultQueue, handler);
         }
     }
 
-    // 将大任务分解成多个小任务
+    // 将大任务分解成多个小任务，每个线程分到一批（向上取整，保证批数不超过线程数）
     public static List<List<String>> divideTasks(List<String> tasks, int numThreads) {
-        int batchSize = tasks.size() / numThreads;
+        int batchSize = Math.max(1, (tasks.size() + numThreads - 1) / numThreads);
         List<List<String>> subtasks = new ArrayList<>();
-        for (int i = 0; i < tasks.size(); i += numThreads) {
-            subtasks.add(tasks.subList(i, Math.min(i + numThreads, tasks.size())));
+        for (int i = 0; i < tasks.size(); i += batchSize) {
+            subtasks.add(tasks.subList(i, Math.min(i + batchSize, tasks.size())));
         }
         return subtasks;
     }
 
-    // 定义任务分发函数
+    // 定义任务分发函数，结果按任务顺序排列
+    // 各种规模都交给共享的工作窃取线程池，由它按需拆分，线程数由线程池和自适应并发上限决定
+    public static List<String> dispatchTasks(List<String> tasks) {
+        return dispatchTasksForkJoin(tasks);
+    }
+
+    // numThreads 已不再使用，会被忽略；请改用 dispatchTasks(tasks)
+    @Deprecated
     public static List<String> dispatchTasks(List<String> tasks, int numThreads) {
-        if (tasks.size() < 10) {  // 小任务阈值
-            return dispatchTasksSmall(tasks, numThreads);
-        } else {
-            int adjustedNumThreads = adjustNumThreads(tasks.size());  // 动态调整线程数
-            return dispatchTasksLarge(tasks, adjustedNumThreads);
-        }
+        return dispatchTasks(tasks);
     }
 
-    // 动态调整任务大小的函数
+    // 动态调整线程数的函数：取自适应控制器当前给出的并发上限和按当前主机负载算出的空闲核心数中较小的一个，
+    // 且不超过任务数。dispatchTasksLarge 用它限制固定线程池的大小
     public static int adjustNumThreads(int numTasks) {
-        // 获取系统负载信息 (示例：假设系统负载低于 1.0 时，可以处理更多任务)
-        // 实际应用中需要使用更准确的系统负载信息
-        double systemLoad = 0.5; // 假设系统负载为 0.5
-        LOGGER.log(Level.INFO, "系统负载: {0}, 任务数量: {1}", new Object[] {systemLoad, numTasks});
-        if (systemLoad < 1.0 && numTasks > 10) {
-            return 2;  // 适当增加线程数以处理更多任务
-        } else {
-            return 1;  // 否则维持原样
-        }
+        double systemLoad = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        int limit = Math.min(CONCURRENCY.getLimit(), CONCURRENCY.headroom());
+        LOGGER.log(Level.INFO, "系统负载: {0}, 并发上限: {1}, 任务数量: {2}", new Object[] {systemLoad, limit, numTasks});
+        return Math.max(1, Math.min(limit, numTasks));
     }
 
+    // 当前的并发上限，供监控使用
+    public static int getConcurrencyLimit() {
+        return CONCURRENCY.getLimit();
+    }
+
+    // 每个任务新建一个单线程执行器并等它结束，只作为基准测试中的对照保留；请改用 dispatchTasks(tasks)。
+    // numThreads 不使用
+    @Deprecated
     public static List<String> dispatchTasksSmall(List<String> tasks, int numThreads) {
         // 为小任务使用单独的线程
         List<String> results = new ArrayList<>();
@@ -87,19 +166,28 @@ public class TaskProcessor {
             } catch (InterruptedException e) {
                 LOGGER.log(Level.WARNING, "线程池关闭被打断.");
             }
-            results.add(resultQueue.take()); // 获取结果
+            String result = resultQueue.poll(); // 获取结果，任务失败时没有结果
+            if (result != null) {
+                results.add(result);
+            }
         }
         return results;
     }
 
     public static List<String> dispatchTasksLarge(List<String> tasks, int numThreads) {
+        return dispatchTasksLarge(tasks, numThreads, TaskProcessor::doSomething);
+    }
+
+    // numThreads 是线程数的上限，主机负载高时按 adjustNumThreads 减少
+    public static List<String> dispatchTasksLarge(List<String> tasks, int numThreads, Function<String, String> handler) {
         List<String> results = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        int threads = Math.min(numThreads, adjustNumThreads(tasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         BlockingQueue<String> resultQueue = new LinkedBlockingQueue<>();
-        List<List<String>> subtasks = divideTasks(tasks, numThreads);
-        List<Future<Void>> futures = new ArrayList<>();
+        List<List<String>> subtasks = divideTasks(tasks, threads);
+        List<Future<?>> futures = new ArrayList<>();
         for (List<String> subtask : subtasks) {
-            futures.add(executor.submit(() -> worker(subtask, resultQueue)));
+            futures.add(executor.submit(() -> worker(subtask, resultQueue, handler)));
         }
         executor.shutdown();
         try {
@@ -107,64 +195,311 @@ public class TaskProcessor {
         } catch (InterruptedException e) {
             LOGGER.log(Level.WARNING, "线程池关闭被打断.");
         }
-        for (Future<Void> future : futures) {
+        for (Future<?> future : futures) {
             try {
                 future.get();
             } catch (InterruptedException | ExecutionException e) {
                 LOGGER.log(Level.WARNING, "任务执行失败: " + e.getMessage());
             }
         }
-        while (!resultQueue.isEmpty()) {
-            results.add(resultQueue.take());
+        resultQueue.drainTo(results);
+        return results;
+    }
+
+    // 使用共享的工作窃取线程池分发任务：整批作为一个任务提交，递归对半拆分，
+    // 空闲线程从忙碌线程的队列里窃取尚未处理的那一半，批次大小不均或单个任务耗时不均时也能保持各线程忙碌。
+    // 返回成功任务的结果，按任务顺序排列
+    public static List<String> dispatchTasksForkJoin(List<String> tasks) {
+        String[] slots = processInSlots(tasks);
+        List<String> results = new ArrayList<>(slots.length);
+        for (String result : slots) {
+            if (result != null) {
+                results.add(result);
+            }
         }
         return results;
     }
 
-    public static String retryTask(String task, int maxRetries) {
-        for (int i = 0; i < maxRetries; i++) {
-            LOGGER.log(Level.INFO, "第 {0} 次尝试处理任务: {1}", new Object[] {i + 1, task});
-            try {
-                BlockingQueue<String> resultQueue = new LinkedBlockingQueue<>();
-                processTask(task, resultQueue);
-                return resultQueue.take();
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "处理任务 {0} 时发生错误: {1}", new Object[] {task, e.getMessage()});
+    // 与 dispatchTasksForkJoin 相同，但结果与任务一一对应：results.get(i) 是 tasks.get(i) 的结果，失败的任务为 null
+    public static List<String> dispatchTasksOrdered(List<String> tasks) {
+        return Arrays.asList(processInSlots(tasks));
+    }
+
+    // 每个结果直接写进按任务下标预分配的数组槽位。每个槽位只有处理该任务的线程写入，不需要加锁，
+    // invoke 返回时 join 已保证所有写入对调用线程可见
+    private static String[] processInSlots(List<String> tasks) {
+        List<String> source = tasks instanceof RandomAccess ? tasks : new ArrayList<>(tasks);
+        String[] results = new String[source.size()];
+        DispatchAction root = new DispatchAction(source, 0, source.size(), results, null);
+        root.forkedAt = System.nanoTime();
+        DISPATCH_POOL.invoke(root);
+        return results;
+    }
+
+    // I/O 密集型任务的分发：每个任务一个（虚拟）线程，线程大部分时间在等待 I/O，线程数不必受 CPU 核数限制。
+    // 提交线程先获取信号量再提交，同时进行的任务不超过 maxConcurrency，既不会压垮下游，也不会一次创建全部线程。
+    // 结果与任务一一对应，失败的任务为 null
+    public static List<String> dispatchTasksVirtual(List<String> tasks, int maxConcurrency) {
+        return dispatchTasksVirtual(tasks, maxConcurrency, TaskProcessor::doSomething);
+    }
+
+    public static List<String> dispatchTasksVirtual(List<String> tasks, int maxConcurrency, Function<String, String> handler) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency 必须大于 0: " + maxConcurrency);
+        }
+        Semaphore permits = new Semaphore(maxConcurrency);
+        String[] results = new String[tasks.size()];
+        CountDownLatch done = new CountDownLatch(tasks.size());
+        int index = 0;
+        try {
+            for (String task : tasks) {
+                int slot = index++;
+                permits.acquire();
                 try {
-                    Thread.sleep(1000); // 等待 1 秒后重试
-                } catch (InterruptedException interruptedException) {
-                    LOGGER.log(Level.WARNING, "任务重试被打断: " + interruptedException.getMessage());
+                    PER_TASK_EXECUTOR.execute(() -> {
+                        try {
+                            results[slot] = processTask(task, handler);
+                        } finally {
+                            permits.release();
+                            done.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException | OutOfMemoryError e) {
+                    // 线程创建失败（平台线程耗尽时抛 OutOfMemoryError）按任务失败处理，结果为 null
+                    permits.release();
+                    done.countDown();
+                    LOGGER.log(Level.SEVERE, "无法提交任务 {0}: {1}", new Object[] {task, e.toString()});
+                }
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.WARNING, "等待任务完成时被打断，已完成的结果之外均为 null.");
+            // 还在运行的任务会继续写入 results，返回副本，调用方拿到的结果不会再变化
+            return Arrays.asList(results.clone());
+        }
+        return Arrays.asList(results);
+    }
+
+    private static ExecutorService createPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.INFO, "当前 JDK 不支持虚拟线程，I/O 任务改用平台线程执行.");
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "io-task-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // 处理 tasks 中 [from, to) 的任务。只有在本线程积压的子任务不多（其他线程可能空闲）时才继续对半拆分，
+    // 否则就地按小块顺序处理，拆分粒度随负载自动调整，不依赖事先按线程数切好的批次
+    private static final class DispatchAction extends RecursiveAction {
+        private final List<String> tasks;
+        private final int from;
+        private final int to;
+        private final String[] results;
+        private final DispatchAction next;  // 同一个父任务先拆出的子任务，用于逐个 join
+        private long forkedAt;  // 提交时间，用于统计排队等待时间
+
+        DispatchAction(List<String> tasks, int from, int to, String[] results, DispatchAction next) {
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.next = next;
+        }
+
+        // 由线程池调度执行时才算排队等待；tryUnfork 收回在本线程执行的子任务没有等待其他线程，不计入
+        @Override
+        protected void compute() {
+            CONCURRENCY.recordQueueWait(System.nanoTime() - forkedAt);
+            process();
+        }
+
+        private void process() {
+            int lo = from;
+            int hi = to;
+            DispatchAction forked = null;
+            while (hi - lo > MIN_CHUNK_SIZE) {
+                if (getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD || !CONCURRENCY.tryAddWorker()) {
+                    // 可窃取的任务已经够多，或者已达到并发上限，先顺序处理一小块，再看是否需要拆分
+                    processChunk(lo, lo + MIN_CHUNK_SIZE);
+                    lo += MIN_CHUNK_SIZE;
+                } else {
+                    int mid = (lo + hi) >>> 1;
+                    forked = new DispatchAction(tasks, mid, hi, results, forked);
+                    forked.forkedAt = System.nanoTime();
+                    forked.fork();
+                    hi = mid;
+                }
+            }
+            processChunk(lo, hi);
+            // 没被窃取的子任务在本线程直接执行，已被窃取的等待其完成
+            for (; forked != null; forked = forked.next) {
+                if (forked.tryUnfork()) {
+                    forked.process();
+                } else {
+                    forked.join();
                 }
             }
         }
-        LOGGER.log(Level.SEVERE, "任务 {0} 在重试 {1} 次后仍然失败", new Object[] {task, maxRetries});
-        return null; // 重试次数最多后任务失败
+
+        private void processChunk(int lo, int hi) {
+            long start = CONCURRENCY.beginChunk();
+            try {
+                for (int i = lo; i < hi; i++) {
+                    results[i] = processTask(tasks.get(i));
+                }
+            } finally {
+                CONCURRENCY.endChunk(start, hi - lo);
+            }
+        }
+    }
+
+    // 同步重试单个任务，失败后按指数退避等待再试，最多尝试 maxRetries 次（至少为 1）；全部失败时返回 null
+    public static String retryTask(String task, int maxRetries) {
+        return retryAsync(task, TaskProcessor::doSomething, maxRetries, DISPATCH_POOL).join().getResult();
     }
 
+    // 异步重试：每次尝试都在 executor 上执行，失败后由 RETRY_SCHEDULER 在退避时间到达后重新提交，
+    // 等待期间不占用任何工作线程，工作线程可以继续处理其他正常的任务。
+    // executor 拒绝提交（例如已关闭）时不再重试，结果按失败完成，返回的 future 总会完成
+    public static CompletableFuture<RetryOutcome> retryAsync(String task, Function<String, String> handler,
+                                                             int maxAttempts, Executor executor) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts 必须大于 0: " + maxAttempts);
+        }
+        CompletableFuture<RetryOutcome> outcome = new CompletableFuture<>();
+        attempt(task, handler, 1, maxAttempts, executor, outcome);
+        return outcome;
+    }
+
+    private static void attempt(String task, Function<String, String> handler, int attempt, int maxAttempts,
+                                Executor executor, CompletableFuture<RetryOutcome> outcome) {
+        CompletableFuture<String> run;
+        try {
+            run = CompletableFuture.supplyAsync(() -> {
+                LOGGER.log(Level.INFO, "第 {0} 次尝试处理任务: {1}", new Object[] {attempt, task});
+                return handler.apply(task);  // 异常不在这里捕获，交给下面决定是否重试
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // 重试时这里运行在 RETRY_SCHEDULER 上，异常抛出去会被调度器吞掉，outcome 就永远不会完成
+            LOGGER.log(Level.SEVERE, "任务 {0} 第 {1} 次尝试无法提交: {2}", new Object[] {task, attempt, e.getMessage()});
+            outcome.complete(new RetryOutcome(task, null, attempt - 1, e));
+            return;
+        }
+        run.whenComplete((result, error) -> {
+            if (error == null) {
+                outcome.complete(new RetryOutcome(task, result, attempt, null));
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            LOGGER.log(attempt >= maxAttempts ? Level.SEVERE : Level.WARNING, "处理任务 {0} 时发生错误: {1}",
+                    new Object[] {task, cause.getMessage()});
+            if (attempt >= maxAttempts) {
+                LOGGER.log(Level.SEVERE, "任务 {0} 在重试 {1} 次后仍然失败", new Object[] {task, maxAttempts});
+                outcome.complete(new RetryOutcome(task, null, attempt, cause));
+                return;
+            }
+            try {
+                RETRY_SCHEDULER.schedule(() -> attempt(task, handler, attempt + 1, maxAttempts, executor, outcome),
+                        retryDelayMillis(attempt), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                outcome.complete(new RetryOutcome(task, null, attempt, cause));
+            }
+        });
+    }
+
+    // 指数退避加全随机抖动：第 n 次失败后在 [0, min(上限, 基础延迟 × 2^(n-1))] 中随机等待，
+    // 避免同时失败的一批任务在同一时刻一起重试
+    static long retryDelayMillis(int failedAttempts) {
+        long ceiling = RETRY_BASE_DELAY_MILLIS << Math.min(failedAttempts - 1, 20);
+        return ThreadLocalRandom.current().nextLong(Math.min(ceiling, RETRY_MAX_DELAY_MILLIS) + 1);
+    }
+
+    // 分发任务并重试，返回成功任务的非 null 结果，并记录每个任务的尝试次数
     public static List<String> dispatchTasksWithRetry(List<String> tasks, int numThreads) {
-        LOGGER.log(Level.INFO, "分发任务并重试: {0}", tasks);
         List<String> results = new ArrayList<>();
+        for (RetryOutcome outcome : dispatchTasksWithRetryOutcomes(tasks, numThreads, TaskProcessor::doSomething)) {
+            if (outcome.isSuccess() && outcome.getResult() != null) {
+                results.add(outcome.getResult());
+            }
+        }
+        return results;
+    }
+
+    // 与 dispatchTasksWithRetry 相同，但返回每个任务的结果、尝试次数和最后一次失败的原因，顺序与 tasks 一致
+    public static List<RetryOutcome> dispatchTasksWithRetryOutcomes(List<String> tasks, int numThreads,
+                                                                   Function<String, String> handler) {
+        LOGGER.log(Level.INFO, "分发任务并重试: {0}", tasks);
         ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-        List<Future<String>> futures = new ArrayList<>();
+        List<CompletableFuture<RetryOutcome>> futures = new ArrayList<>(tasks.size());
         for (String task : tasks) {
-            futures.add(executor.submit(() -> retryTask(task, 3))); // 使用 3 次重试
+            futures.add(retryAsync(task, handler, MAX_ATTEMPTS, executor));
         }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
         executor.shutdown();
-        try {
-            executor.awaitTermination(1, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            LOGGER.log(Level.WARNING, "线程池关闭被打断.");
-        }
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
-                if (result != null) {
-                    results.add(result);
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                LOGGER.log(Level.WARNING, "任务执行失败: " + e.getMessage());
+
+        List<RetryOutcome> outcomes = new ArrayList<>(futures.size());
+        int retried = 0;
+        int failed = 0;
+        for (CompletableFuture<RetryOutcome> future : futures) {
+            RetryOutcome outcome = future.join();
+            outcomes.add(outcome);
+            if (outcome.getAttempts() > 1) {
+                retried++;
+                LOGGER.log(Level.INFO, "任务 {0} 共尝试 {1} 次，{2}",
+                        new Object[] {outcome.getTask(), outcome.getAttempts(), outcome.isSuccess() ? "成功" : "失败"});
+            }
+            if (!outcome.isSuccess()) {
+                failed++;
             }
         }
-        return results;
+        LOGGER.log(Level.INFO, "重试分发完成: {0} 个任务，{1} 个经过重试，{2} 个最终失败",
+                new Object[] {tasks.size(), retried, failed});
+        return outcomes;
+    }
+
+    // 带重试的任务的最终结果
+    public static final class RetryOutcome {
+        private final String task;
+        private final String result;
+        private final int attempts;
+        private final Throwable failure;
+
+        RetryOutcome(String task, String result, int attempts, Throwable failure) {
+            this.task = task;
+            this.result = result;
+            this.attempts = attempts;
+            this.failure = failure;
+        }
+
+        public String getTask() {
+            return task;
+        }
+
+        // 失败时为 null；handler 返回 null 也算成功，此时同样为 null
+        public String getResult() {
+            return result;
+        }
+
+        // 实际执行的次数；第一次就无法提交时为 0
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        // 最后一次尝试失败的原因，成功时为 null
+        public Throwable getFailure() {
+            return failure;
+        }
     }
 
     // 主函数
@@ -173,12 +508,134 @@ public class TaskProcessor {
         // 定义大任务
         List<String> tasks = getTasks();
 
-        // 定义线程数，根据CPU核心数动态设置
-        int numThreads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()); 
-
-        // 分发任务并等待结果
-        List<String> result = dispatchTasks(tasks, numThreads);
+        // 分发任务并等待结果，线程数由共享线程池按 CPU 核数和主机负载决定
+        List<String> result = dispatchTasks(tasks);
         LOGGER.log(Level.INFO, "任务处理完成，结果: {0}", result);
         System.out.println(result);
     }
 }
+
+// 自适应并发控制（AIMD）：每隔一段时间根据最近的统计调整同时处理任务的线程数上限。
+// 主机上其他进程占用的 CPU 使本进程没有足够的空闲核心时成倍收缩；
+// 有任务因达到上限而没有拆分出去、或拆出的任务排队时间超过处理一小块的时间，且还有空闲核心时，逐个增加。
+// 上限只通过 tryAddWorker 约束新的拆分，不限制已经拆出的子任务，所以正在处理的线程数可能暂时超过它
+class ConcurrencyController {
+    private static final Logger LOGGER = Logger.getLogger(ConcurrencyController.class.getName());
+
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // 系统的平均负载是 1 分钟的指数移动平均，本进程的负载也按同样的时间常数平滑后再相减
+    private static final double LOAD_AVERAGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final int hostCpus = hostProcessorCount();
+    private final int maxLimit;
+    private final AtomicInteger limit;
+    private final AtomicInteger active = new AtomicInteger();  // 正在处理任务的线程数
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder completedChunks = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder queueWaits = new LongAdder();
+    private final LongAdder throttled = new LongAdder();  // 因达到上限而没有拆分的次数
+    private final AtomicLong lastSample = new AtomicLong(System.nanoTime());
+    private volatile double ownLoadAverage;  // 只在 adjust 中写入，由 lastSample 的 CAS 保证同一时间只有一个线程
+
+    ConcurrencyController(int maxLimit) {
+        this.maxLimit = maxLimit;
+        this.limit = new AtomicInteger(maxLimit);
+    }
+
+    int getLimit() {
+        return limit.get();
+    }
+
+    // 调用线程自己不计入 active，拆分出的任务会由另一个线程处理，所以要求加上它之后仍不超过上限
+    boolean tryAddWorker() {
+        if (active.get() + 1 < limit.get()) {
+            return true;
+        }
+        throttled.increment();
+        return false;
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWaitNanos.add(nanos);
+        queueWaits.increment();
+    }
+
+    long beginChunk() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    void endChunk(long start, int tasks) {
+        long end = System.nanoTime();
+        active.decrementAndGet();
+        busyNanos.add(end - start);
+        completedTasks.add(tasks);
+        completedChunks.increment();
+        long last = lastSample.get();
+        if (end - last >= SAMPLE_INTERVAL_NANOS && lastSample.compareAndSet(last, end)) {
+            adjust(end - last);
+        }
+    }
+
+    private void adjust(long elapsedNanos) {
+        long tasks = completedTasks.sumThenReset();
+        long chunks = completedChunks.sumThenReset();
+        long busy = busyNanos.sumThenReset();
+        long waitNanos = queueWaitNanos.sumThenReset();
+        long waits = queueWaits.sumThenReset();
+        long throttledSplits = throttled.sumThenReset();
+
+        // 本进程在这段时间里平均有几个线程在处理任务
+        double decay = Math.exp(-elapsedNanos / LOAD_AVERAGE_NANOS);
+        ownLoadAverage = ownLoadAverage * decay + (double) busy / elapsedNanos * (1 - decay);
+        double systemLoad = os.getSystemLoadAverage();
+        int headroom = headroom(systemLoad);
+
+        double chunkNanos = chunks == 0 ? 0 : (double) busy / chunks;
+        double meanWaitNanos = waits == 0 ? 0 : (double) waitNanos / waits;
+        int current = limit.get();
+        int next = current;
+        if (current > headroom) {
+            next = Math.max(1, current * 3 / 4);
+        } else if ((throttledSplits > 0 || meanWaitNanos > chunkNanos) && current < Math.min(headroom, maxLimit)) {
+            next = current + 1;
+        }
+        if (next != current) {
+            limit.set(next);
+            LOGGER.log(Level.FINE, "并发上限 {0} -> {1}，系统负载 {2}，本进程 {3}，每个任务 {4} 微秒，排队 {5} 微秒",
+                    new Object[] {current, next, systemLoad, ownLoadAverage,
+                            tasks == 0 ? 0 : busy / tasks / 1000, (long) meanWaitNanos / 1000});
+        }
+    }
+
+    // 除去其他进程占用的部分后，本进程还能使用的核心数，至少为 1
+    int headroom() {
+        return headroom(os.getSystemLoadAverage());
+    }
+
+    private int headroom(double systemLoad) {
+        int cpus = os.getAvailableProcessors();
+        // 不支持的平台返回负数，此时认为没有其他负载。平均负载是整台主机的，容器的 CPU 配额可能只是其中一部分。
+        // 假设其他负载均匀分布在主机的所有核心上，只按本进程可用核心所占的比例计入，
+        // 否则主机上的负载会让容器误以为自己的核心全被占满
+        double hostOtherLoad = systemLoad < 0 ? 0 : Math.max(0, systemLoad - ownLoadAverage);
+        double otherLoad = hostOtherLoad * Math.min(1, (double) cpus / hostCpus);
+        return Math.max(1, (int) Math.round(cpus - otherLoad));
+    }
+
+    // 主机的逻辑核心数。availableProcessors 在容器里返回配额，/proc/cpuinfo 列出的是主机的全部核心；
+    // 读不到（非 Linux）时认为两者相同
+    private static int hostProcessorCount() {
+        int available = Runtime.getRuntime().availableProcessors();
+        try (Stream<String> lines = Files.lines(Paths.get("/proc/cpuinfo"))) {
+            long count = lines.filter(line -> line.startsWith("processor")).count();
+            return (int) Math.max(available, count);
+        } catch (IOException | UncheckedIOException e) {
+            return available;
+        }
+    }
+}